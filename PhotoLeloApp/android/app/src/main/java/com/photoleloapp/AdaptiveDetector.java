@@ -0,0 +1,159 @@
+package com.photoleloapp;
+
+import android.graphics.Bitmap;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.Tasks;
+import com.google.mlkit.vision.common.InputImage;
+import com.google.mlkit.vision.face.Face;
+import com.google.mlkit.vision.face.FaceDetection;
+import com.google.mlkit.vision.face.FaceDetector;
+import com.google.mlkit.vision.face.FaceDetectorOptions;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+// Pools of FAST and ACCURATE detector clients (one slot per worker, handed out
+// round-robin and created on first use) and the escalation strategy on top of
+// them. FAST runs first; only when it finds nothing does the image go through
+// ACCURATE and then FAST again at the other rotations, for photos whose EXIF
+// orientation is missing or wrong. Escalation stops at the first pass that
+// finds a face, and no new pass is started once the request's deadline passes.
+final class AdaptiveDetector {
+    
+    private static final String TAG = "FaceComparison";
+    private static final boolean DEBUG = BuildConfig.DEBUG;
+    
+    private static final int FAST = 0;
+    private static final int ACCURATE = 1;
+    
+    // Detection passes in order: detector mode, extra clockwise rotation, name
+    private static final int[] PASS_MODES = {FAST, ACCURATE, FAST, FAST, FAST};
+    private static final int[] PASS_ROTATIONS = {0, 0, 90, 270, 180};
+    private static final String[] PASS_NAMES = {"fast", "accurate", "fast+90", "fast+270", "fast+180"};
+    
+    static final class Result {
+        final List<Face> faces;
+        final int rotationDegrees; // rotation the face boxes are upright in
+        final String pass; // pass that produced the result
+        
+        Result(List<Face> faces, int rotationDegrees, String pass) {
+            this.faces = faces;
+            this.rotationDegrees = rotationDegrees;
+            this.pass = pass;
+        }
+    }
+    
+    private final Executor executor;
+    private final PipelineMetrics metrics;
+    private final FaceDetector[][] pools;
+    private final int[] next = new int[2]; // round-robin position per pool
+    private boolean closed;
+    
+    AdaptiveDetector(int poolSize, Executor executor, PipelineMetrics metrics) {
+        this.executor = executor;
+        this.metrics = metrics;
+        this.pools = new FaceDetector[2][poolSize];
+    }
+    
+    static FaceDetectorOptions options(boolean accurate, boolean tracking) {
+        FaceDetectorOptions.Builder builder = new FaceDetectorOptions.Builder()
+                .setPerformanceMode(accurate ? FaceDetectorOptions.PERFORMANCE_MODE_ACCURATE
+                    : FaceDetectorOptions.PERFORMANCE_MODE_FAST)
+                .setLandmarkMode(FaceDetectorOptions.LANDMARK_MODE_NONE)
+                .setClassificationMode(FaceDetectorOptions.CLASSIFICATION_MODE_NONE)
+                .setMinFaceSize(0.1f)
+                .setContourMode(FaceDetectorOptions.CONTOUR_MODE_NONE);
+        if (tracking) {
+            builder.enableTracking();
+        }
+        return builder.build();
+    }
+    
+    // Detects faces in a stored bitmap that is upright after rotationDegrees.
+    // deadline is in SystemClock.elapsedRealtime() milliseconds.
+    Task<Result> detect(Bitmap bitmap, int rotationDegrees, long deadline) {
+        return run(bitmap, rotationDegrees, deadline, 0);
+    }
+    
+    // Creates every FAST client and runs one inference through each, so their
+    // model is loaded before the first real request
+    Task<Void> warmUp(Bitmap blank) {
+        Task<?>[] runs = new Task<?>[pools[FAST].length];
+        for (int i = 0; i < runs.length; i++) {
+            runs[i] = client(FAST, i).process(InputImage.fromBitmap(blank, 0));
+        }
+        return Tasks.whenAll(runs);
+    }
+    
+    synchronized void close() {
+        closed = true;
+        for (FaceDetector[] pool : pools) {
+            for (int i = 0; i < pool.length; i++) {
+                if (pool[i] != null) {
+                    pool[i].close();
+                    pool[i] = null;
+                }
+            }
+        }
+    }
+    
+    private Task<Result> run(Bitmap bitmap, int rotationDegrees, long deadline, int pass) {
+        int rotation = (rotationDegrees + PASS_ROTATIONS[pass]) % 360;
+        int stage = pass == 0 ? PipelineMetrics.DETECT : PipelineMetrics.DETECT_RETRY;
+        long start = PipelineMetrics.start();
+        int cookie = PipelineTrace.beginAsync(PipelineMetrics.sectionName(stage));
+        return client(PASS_MODES[pass]).process(InputImage.fromBitmap(bitmap, rotation))
+            .continueWithTask(executor, task -> {
+                PipelineTrace.endAsync(PipelineMetrics.sectionName(stage), cookie);
+                metrics.record(stage, start);
+                if (!task.isSuccessful()) {
+                    if (pass == 0) {
+                        return Tasks.forException(task.getException());
+                    }
+                    // The FAST pass already ran; report its miss rather than failing
+                    Log.w(TAG, "Detection pass " + PASS_NAMES[pass] + " failed", task.getException());
+                    return Tasks.forResult(new Result(Collections.<Face>emptyList(), rotationDegrees, PASS_NAMES[pass]));
+                }
+                
+                List<Face> faces = task.getResult();
+                if (!faces.isEmpty()) {
+                    if (pass > 0) {
+                        metrics.increment(PipelineMetrics.RETRY_RESCUES);
+                        if (DEBUG) Log.d(TAG, "Face found by " + PASS_NAMES[pass] + " pass");
+                    }
+                    return Tasks.forResult(new Result(faces, rotation, PASS_NAMES[pass]));
+                }
+                if (pass + 1 == PASS_MODES.length || SystemClock.elapsedRealtime() >= deadline) {
+                    // Nothing found; boxes are empty, keep the EXIF rotation for the fallback
+                    return Tasks.forResult(new Result(faces, rotationDegrees, PASS_NAMES[pass]));
+                }
+                if (pass == 0) {
+                    metrics.increment(PipelineMetrics.DETECTION_RETRIES);
+                }
+                return run(bitmap, rotationDegrees, deadline, pass + 1);
+            });
+    }
+    
+    private synchronized FaceDetector client(int mode) {
+        int slot = next[mode];
+        next[mode] = (slot + 1) % pools[mode].length;
+        return client(mode, slot);
+    }
+    
+    // The given slot, not the next in turn, so warm-up reaches every client
+    // however detections interleave with it
+    private synchronized FaceDetector client(int mode, int slot) {
+        if (closed) {
+            throw new IllegalStateException("Face detector closed");
+        }
+        FaceDetector[] pool = pools[mode];
+        if (pool[slot] == null) {
+            pool[slot] = FaceDetection.getClient(options(mode == ACCURATE, false));
+        }
+        return pool[slot];
+    }
+}
@@ -0,0 +1,48 @@
+package com.photoleloapp;
+
+import android.graphics.Bitmap;
+
+import com.photoleloapp.facecore.PixelSource;
+
+import java.nio.ShortBuffer;
+
+// Android side of the pixel core: a Bitmap as a facecore PixelSource
+final class BitmapPixelSource implements PixelSource {
+    
+    private final Bitmap bitmap;
+    
+    BitmapPixelSource(Bitmap bitmap) {
+        this.bitmap = bitmap;
+    }
+    
+    @Override
+    public int width() {
+        return bitmap.getWidth();
+    }
+    
+    @Override
+    public int height() {
+        return bitmap.getHeight();
+    }
+    
+    @Override
+    public boolean isRgb565() {
+        return bitmap.getConfig() == Bitmap.Config.RGB_565;
+    }
+    
+    // Rows may be padded, and copyPixelsToBuffer copies the padding too
+    @Override
+    public int rgb565Stride() {
+        return bitmap.getRowBytes() / 2;
+    }
+    
+    @Override
+    public void copyRgb565(ShortBuffer dst) {
+        bitmap.copyPixelsToBuffer(dst);
+    }
+    
+    @Override
+    public void getPixels(int[] dst, int offset, int stride, int left, int top, int width, int height) {
+        bitmap.getPixels(dst, offset, stride, left, top, width, height);
+    }
+}
@@ -0,0 +1,71 @@
+package com.photoleloapp;
+
+import android.graphics.BitmapFactory;
+
+// How to decode an image so its long edge lands on a target size in one pass:
+// the largest power-of-two inSampleSize that keeps the long edge at or above the
+// target, followed by a density scale for the remaining factor. Power-of-two
+// sampling alone can leave up to twice the requested pixels on each axis.
+final class DecodePlan {
+    
+    final int sourceWidth;
+    final int sourceHeight;
+    final int sampleSize;
+    final int density; // 0 when no scaling is needed
+    final int targetDensity;
+    final int width; // expected decoded size
+    final int height;
+    
+    private DecodePlan(int sourceWidth, int sourceHeight, int sampleSize, int density, int targetDensity) {
+        this.sourceWidth = sourceWidth;
+        this.sourceHeight = sourceHeight;
+        this.sampleSize = sampleSize;
+        this.density = density;
+        this.targetDensity = targetDensity;
+        
+        double scale = scale();
+        this.width = Math.max(1, (int) Math.round(sourceWidth * scale));
+        this.height = Math.max(1, (int) Math.round(sourceHeight * scale));
+    }
+    
+    static DecodePlan forLongEdge(int sourceWidth, int sourceHeight, int targetLongEdge) {
+        int longEdge = Math.max(sourceWidth, sourceHeight);
+        if (longEdge <= targetLongEdge) {
+            return new DecodePlan(sourceWidth, sourceHeight, 1, 0, 0);
+        }
+        
+        int sampleSize = 1;
+        while (longEdge / (sampleSize * 2) >= targetLongEdge) {
+            sampleSize *= 2;
+        }
+        
+        // Expressed against the source long edge so the ratio stays exact whatever
+        // rounding the decoder applies to the sampled size
+        int density = longEdge;
+        int targetDensity = targetLongEdge * sampleSize;
+        if (density == targetDensity) {
+            return new DecodePlan(sourceWidth, sourceHeight, sampleSize, 0, 0);
+        }
+        return new DecodePlan(sourceWidth, sourceHeight, sampleSize, density, targetDensity);
+    }
+    
+    void applyTo(BitmapFactory.Options options) {
+        options.inSampleSize = sampleSize;
+        if (density != 0) {
+            options.inScaled = true;
+            options.inDensity = density;
+            options.inTargetDensity = targetDensity;
+        }
+    }
+    
+    // Overall source-to-output scale
+    double scale() {
+        return density != 0 ? (double) targetDensity / density / sampleSize : 1.0 / sampleSize;
+    }
+    
+    @Override
+    public String toString() {
+        return sourceWidth + "x" + sourceHeight + " -> " + width + "x" + height
+            + " (1/" + sampleSize + (density != 0 ? " x " + targetDensity + "/" + density : "") + ")";
+    }
+}
@@ -1,713 +1,747 @@
 package com.photoleloapp;
 
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
-import android.graphics.Matrix;
 import android.graphics.Rect;
-import android.media.ExifInterface;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Base64;
 import android.util.Log;
-import android.util.LruCache;
 
 import com.facebook.react.bridge.Promise;
 import com.facebook.react.bridge.ReactApplicationContext;
 import com.facebook.react.bridge.ReactContextBaseJavaModule;
 import com.facebook.react.bridge.ReactMethod;
+import com.facebook.react.bridge.ReadableArray;
+import com.facebook.react.bridge.ReadableMap;
+import com.facebook.react.bridge.WritableArray;
 import com.facebook.react.bridge.WritableMap;
 import com.facebook.react.bridge.Arguments;
+import com.facebook.react.modules.core.DeviceEventManagerModule;
 
-import com.google.mlkit.vision.common.InputImage;
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.Tasks;
 import com.google.mlkit.vision.face.Face;
 import com.google.mlkit.vision.face.FaceDetection;
 import com.google.mlkit.vision.face.FaceDetector;
-import com.google.mlkit.vision.face.FaceDetectorOptions;
+
+import com.photoleloapp.facecore.FaceScores;
+import com.photoleloapp.facecore.FeatureCache;
+import com.photoleloapp.facecore.FeatureLayout;
+import com.photoleloapp.facecore.MatchStabilizer;
+import com.photoleloapp.facecore.PixelRaster;
+import com.photoleloapp.facecore.YuvFrame;
 
 import java.io.File;
 import java.io.IOException;
 import java.util.List;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class FaceComparisonModule extends ReactContextBaseJavaModule {
     
+    static final String NAME = "FaceComparison";
     private static final String TAG = "FaceComparison";
-    private static final int MAX_IMAGE_SIZE = 1024; // Max dimension for processing
-    private static final int CACHE_SIZE = 10; // Cache for processed features
+    // Per-comparison logging only in debug builds so the hot path builds no strings
+    private static final boolean DEBUG = BuildConfig.DEBUG;
+    static final String LIVE_MATCH_EVENT = "FaceLiveMatch";
+    private static final int DEFAULT_STABLE_FRAMES = 5;
+    private static final double DEFAULT_STABLE_TOLERANCE = 10.0; // confidence points
+    
+    // Escalating past the FAST pass is only started within this budget per image
+    private static final long DETECTION_DEADLINE_MS = 1500;
+    
+    private static final int WARM_UP_SIZE = 64; // blank image used to load the detector model
+    
+    // Trace sections around the work done once both sides are detected
+    private static final String COMPARE_SECTION = PipelineTrace.sectionName("compare");
+    private static final String VERIFY_SECTION = PipelineTrace.sectionName("verify");
+    
+    // Decode, detection callbacks and feature math all run on this pool, never on the bridge/UI thread
+    private static final int WORKER_COUNT = Math.max(2, Math.min(4, Runtime.getRuntime().availableProcessors() - 1));
     
-    private FaceDetector detector;
+    private AdaptiveDetector detectors;
+    private FaceDetector trackingDetector; // live frames only, created on first use
     private ExecutorService executorService;
-    private LruCache<String, double[]> featureCache;
+    private FeatureCache featureCache;
+    private TemplateStore templateStore;
+    private final FaceImageLoader imageLoader;
+    private final PipelineMetrics metrics = new PipelineMetrics();
+    private volatile LiveVerificationSession liveSession;
+    private Task<Void> warmUpTask; // guarded by this
     
+    // Construction only wires things up: worker threads start on first use and
+    // detector clients are created on first detection (or by warmUp)
     public FaceComparisonModule(ReactApplicationContext reactContext) {
         super(reactContext);
         
-        // Initialize optimized ML Kit Face Detector
-        FaceDetectorOptions options = new FaceDetectorOptions.Builder()
-                .setPerformanceMode(FaceDetectorOptions.PERFORMANCE_MODE_FAST)
-                .setLandmarkMode(FaceDetectorOptions.LANDMARK_MODE_NONE)
-                .setClassificationMode(FaceDetectorOptions.CLASSIFICATION_MODE_NONE)
-                .setMinFaceSize(0.1f)
-                .setContourMode(FaceDetectorOptions.CONTOUR_MODE_NONE)
-                .build();
+        executorService = Executors.newFixedThreadPool(WORKER_COUNT, new WorkerThreadFactory());
         
-        detector = FaceDetection.getClient(options);
-        executorService = Executors.newSingleThreadExecutor();
+        // ML Kit detector clients, one per worker, FAST first and ACCURATE on demand
+        detectors = new AdaptiveDetector(WORKER_COUNT, executorService, metrics);
+        
+        imageLoader = new FaceImageLoader(reactContext.getContentResolver(), metrics);
+        templateStore = new TemplateStore(new File(reactContext.getFilesDir(), "face_templates"));
         
         // Initialize feature cache
-        featureCache = new LruCache<String, double[]>(CACHE_SIZE) {
-            @Override
-            protected int sizeOf(String key, double[] features) {
-                return features.length * 8; // 8 bytes per double
-            }
-        };
+        featureCache = new FeatureCache(FeatureCache.DEFAULT_BUDGET_BYTES);
     }
 
     @Override
     public String getName() {
-        return "FaceComparison";
+        return NAME;
     }
 
+    // Creates the detector clients and runs one inference on a blank image off
+    // the UI thread, so the first real verification doesn't pay the model load.
+    // Concurrent calls share one warm-up; a failed one is retried on the next call.
     @ReactMethod
-    public void compareFaces(String imagePath1, String imagePath2, Promise promise) {
-        Bitmap bitmap1 = null;
-        Bitmap bitmap2 = null;
-        
+    public void warmUp(Promise promise) {
+        long start = SystemClock.elapsedRealtime();
+        Task<Void> task;
         try {
-            Log.d(TAG, "Starting face comparison...");
-            Log.d(TAG, "Image 1 path: " + imagePath1);
-            Log.d(TAG, "Image 2 path: " + imagePath2);
-            
-            // Load and properly orient both images
-            bitmap1 = loadAndOrientBitmap(imagePath1);
-            bitmap2 = loadAndOrientBitmap(imagePath2);
-
-            if (bitmap1 == null || bitmap2 == null) {
-                promise.reject("ERROR", "Failed to load images");
+            synchronized (this) {
+                if (warmUpTask == null || (warmUpTask.isComplete() && !warmUpTask.isSuccessful())) {
+                    warmUpTask = Tasks.call(executorService,
+                            () -> Bitmap.createBitmap(WARM_UP_SIZE, WARM_UP_SIZE, Bitmap.Config.RGB_565))
+                        .continueWithTask(executorService, created -> {
+                            Bitmap blank = created.getResult();
+                            return detectors.warmUp(blank).continueWith(executorService, done -> {
+                                blank.recycle();
+                                if (!done.isSuccessful()) {
+                                    // A cancelled task has no exception; throwing null would NPE
+                                    Exception e = done.getException();
+                                    throw e != null ? e : new CancellationException("Detector warm-up cancelled");
+                                }
+                                return null;
+                            });
+                        });
+                }
+                task = warmUpTask;
+            }
+        } catch (RejectedExecutionException e) {
+            promise.reject("ERROR", "Face comparison unavailable: " + e.getMessage());
+            return;
+        }
+        
+        task.addOnCompleteListener(executorService, done -> {
+            if (!done.isSuccessful()) {
+                Exception e = done.getException();
+                Log.e(TAG, "Detector warm-up failed", e);
+                promise.reject("WARMUP_ERROR", "Detector warm-up failed: " + (e != null ? e.getMessage() : "cancelled"));
                 return;
             }
-
-            Log.d(TAG, "Images loaded successfully");
-            Log.d(TAG, "Image 1 size: " + bitmap1.getWidth() + "x" + bitmap1.getHeight());
-            Log.d(TAG, "Image 2 size: " + bitmap2.getWidth() + "x" + bitmap2.getHeight());
-            
-            // Detect faces in both images
-            // Try multiple rotations if face not detected
-            InputImage image1 = InputImage.fromBitmap(bitmap1, 0);
-            InputImage image2 = InputImage.fromBitmap(bitmap2, 0);
-            
-            Log.d(TAG, "Created InputImages for face detection");
+            WritableMap result = Arguments.createMap();
+            result.putBoolean("ready", true);
+            result.putDouble("waitedMs", SystemClock.elapsedRealtime() - start);
+            promise.resolve(result);
+        });
+    }
+    
+    @ReactMethod
+    public void compareFaces(String imagePath1, String imagePath2, Promise promise) {
+        if (DEBUG) {
+            Log.d(TAG, "Starting face comparison...");
+            Log.d(TAG, "Image 1 path: " + FaceImageLoader.describe(imagePath1));
+            Log.d(TAG, "Image 2 path: " + FaceImageLoader.describe(imagePath2));
+        }
+        
+        try {
+            // Both images are decoded and detected concurrently on the worker pool
+            Task<DetectedImage> task1 = decodeAndDetect(imagePath1);
+            Task<DetectedImage> task2 = decodeAndDetect(imagePath2);
             
-            final Bitmap finalBitmap1 = bitmap1;
-            final Bitmap finalBitmap2 = bitmap2;
+            Tasks.whenAllComplete(task1, task2)
+                .addOnCompleteListener(executorService, done -> onImagesDetected(task1, task2, promise));
             
-            // Process first image
-            detector.process(image1)
-                .addOnSuccessListener(faces1 -> {
-                    Log.d(TAG, "Faces detected in image 1: " + faces1.size());
-                    
-                    if (faces1.isEmpty()) {
-                        Log.w(TAG, "No face detected in first image, using fallback comparison");
-                        // Fallback to full image comparison
-                        performFallbackComparison(finalBitmap1, finalBitmap2, promise);
-                        cleanup(finalBitmap1, finalBitmap2);
+        } catch (RejectedExecutionException e) {
+            Log.e(TAG, "Worker pool rejected face comparison", e);
+            promise.reject("ERROR", "Face comparison unavailable: " + e.getMessage());
+        }
+    }
+
+    @ReactMethod
+    public void compareFacesBatch(String referencePath, ReadableArray candidatePaths, Promise promise) {
+        String[] paths = new String[candidatePaths.size()];
+        for (int i = 0; i < paths.length; i++) {
+            paths[i] = candidatePaths.getString(i);
+        }
+        
+        if (DEBUG) Log.d(TAG, "Starting batch comparison of " + paths.length + " candidates against " + FaceImageLoader.describe(referencePath));
+        
+        try {
+            // The reference is decoded, detected and extracted exactly once
+            decodeAndDetect(referencePath)
+                .continueWith(executorService, this::buildTemplate)
+                .addOnCompleteListener(executorService, task -> {
+                    if (!task.isSuccessful()) {
+                        rejectWith(promise, task.getException());
                         return;
                     }
-                    
-                    // Process second image
-                    detector.process(image2)
-                        .addOnSuccessListener(faces2 -> {
-                            Log.d(TAG, "Faces detected in image 2: " + faces2.size());
-                            
-                            if (faces2.isEmpty()) {
-                                Log.w(TAG, "No face detected in second image, using fallback comparison");
-                                // Fallback to full image comparison
-                                performFallbackComparison(finalBitmap1, finalBitmap2, promise);
-                                cleanup(finalBitmap1, finalBitmap2);
-                                return;
-                            }
-                            
-                            try {
-                                // Get the largest face from each image
-                                Face face1 = getLargestFace(faces1);
-                                Face face2 = getLargestFace(faces2);
-                                
-                                // Extract face regions with padding
-                                Bitmap faceBitmap1 = extractFaceRegion(finalBitmap1, face1);
-                                Bitmap faceBitmap2 = extractFaceRegion(finalBitmap2, face2);
-                                
-                                if (faceBitmap1 == null || faceBitmap2 == null) {
-                                    promise.reject("ERROR", "Failed to extract face regions");
-                                    cleanup(finalBitmap1, finalBitmap2);
-                                    return;
-                                }
-                                
-                                Log.d(TAG, "Face regions extracted successfully");
-                                
-                                // Extract features from face regions only
-                                double[] features1 = extractFaceFeatures(faceBitmap1);
-                                double[] features2 = extractFaceFeatures(faceBitmap2);
-                                
-                                // Clean up face bitmaps
-                                faceBitmap1.recycle();
-                                faceBitmap2.recycle();
-                                
-                                // Calculate similarity
-                                double distance = calculateEuclideanDistance(features1, features2);
-                                
-                                Log.d(TAG, "Raw distance: " + distance);
-                                Log.d(TAG, "Feature vector length: " + features1.length);
-                                
-                                // Normalize distance - face-only comparison has different scale
-                                // Same person: 0.5-3.0
-                                // Different people: 3.5+
-                                double normalizedDistance = Math.min(distance / 5.0, 1.0);
-                                double confidence = (1 - normalizedDistance) * 100;
-                                
-                                Log.d(TAG, "Normalized distance: " + normalizedDistance);
-                                Log.d(TAG, "Confidence: " + confidence + "%");
-                                
-                                // Threshold: 70% for face-only comparison (more lenient since we're only comparing faces)
-                                boolean isMatch = confidence >= 70.0;
-                                
-                                Log.d(TAG, "Threshold: 70%, Match: " + isMatch);
-
-                                WritableMap result = Arguments.createMap();
-                                result.putBoolean("isMatch", isMatch);
-                                result.putDouble("confidence", confidence);
-                                result.putString("message", isMatch ? 
-                                    "Face verified successfully!" : 
-                                    "Face does not match. Confidence: " + String.format("%.1f", confidence) + "%");
-
-                                promise.resolve(result);
-                                cleanup(finalBitmap1, finalBitmap2);
-                                
-                            } catch (Exception e) {
-                                Log.e(TAG, "Error during face comparison", e);
-                                promise.reject("ERROR", e.getMessage());
-                                cleanup(finalBitmap1, finalBitmap2);
-                            }
-                        })
-                        .addOnFailureListener(e -> {
-                            Log.e(TAG, "Face detection failed for image 2", e);
-                            promise.reject("DETECTION_ERROR", "Face detection failed: " + e.getMessage());
-                            cleanup(finalBitmap1, finalBitmap2);
-                        });
-                })
-                .addOnFailureListener(e -> {
-                    Log.e(TAG, "Face detection failed for image 1", e);
-                    promise.reject("DETECTION_ERROR", "Face detection failed: " + e.getMessage());
-                    cleanup(finalBitmap1, finalBitmap2);
+                    new BatchComparison(task.getResult(), paths, promise).start();
                 });
-
-        } catch (Exception e) {
-            Log.e(TAG, "Error in compareFaces", e);
-            promise.reject("ERROR", e.getMessage());
-            cleanup(bitmap1, bitmap2);
+            
+        } catch (RejectedExecutionException e) {
+            Log.e(TAG, "Worker pool rejected batch comparison", e);
+            promise.reject("ERROR", "Face comparison unavailable: " + e.getMessage());
         }
     }
     
-    private Face getLargestFace(List<Face> faces) {
-        Face largest = faces.get(0);
-        int maxArea = 0;
+    @ReactMethod
+    public void enroll(String userId, String imagePath, Promise promise) {
+        if (DEBUG) Log.d(TAG, "Enrolling face for " + userId + " from " + FaceImageLoader.describe(imagePath));
         
-        for (Face face : faces) {
-            Rect bounds = face.getBoundingBox();
-            int area = bounds.width() * bounds.height();
-            if (area > maxArea) {
-                maxArea = area;
-                largest = face;
-            }
+        try {
+            decodeAndDetect(imagePath)
+                .continueWith(executorService, this::buildTemplate)
+                .addOnCompleteListener(executorService, task -> {
+                    if (!task.isSuccessful()) {
+                        rejectWith(promise, task.getException());
+                        return;
+                    }
+                    
+                    FaceTemplate template = task.getResult();
+                    try {
+                        templateStore.save(userId, template);
+                    } catch (IOException e) {
+                        Log.e(TAG, "Failed to save face template", e);
+                        promise.reject("STORAGE_ERROR", "Failed to save face template: " + e.getMessage());
+                        return;
+                    }
+                    
+                    WritableMap result = Arguments.createMap();
+                    result.putString("userId", userId);
+                    result.putBoolean("hasFace", template.hasFace());
+                    promise.resolve(result);
+                });
+            
+        } catch (RejectedExecutionException e) {
+            Log.e(TAG, "Worker pool rejected enrollment", e);
+            promise.reject("ERROR", "Face comparison unavailable: " + e.getMessage());
         }
-        
-        return largest;
     }
     
-    private Bitmap extractFaceRegion(Bitmap bitmap, Face face) {
+    @ReactMethod
+    public void verify(String userId, String capturedPath, Promise promise) {
+        if (DEBUG) Log.d(TAG, "Verifying " + FaceImageLoader.describe(capturedPath) + " against enrolled face of " + userId);
+        
         try {
-            Rect bounds = face.getBoundingBox();
-            
-            // Add 30% padding around face
-            int padding = (int) (Math.max(bounds.width(), bounds.height()) * 0.3);
-            
-            int left = Math.max(0, bounds.left - padding);
-            int top = Math.max(0, bounds.top - padding);
-            int right = Math.min(bitmap.getWidth(), bounds.right + padding);
-            int bottom = Math.min(bitmap.getHeight(), bounds.bottom + padding);
-            
-            int width = right - left;
-            int height = bottom - top;
-            
-            if (width <= 0 || height <= 0) {
-                return null;
-            }
-            
-            Log.d(TAG, "Extracting face region: " + left + "," + top + " " + width + "x" + height);
+            // Only the new capture is decoded; the reference comes from the template store
+            Task<FaceTemplate> reference = Tasks.call(executorService, () -> templateStore.load(userId));
+            Task<DetectedImage> candidate = decodeAndDetect(capturedPath);
             
-            return Bitmap.createBitmap(bitmap, left, top, width, height);
+            Tasks.whenAllComplete(reference, candidate)
+                .addOnCompleteListener(executorService, done -> onVerifyReady(userId, reference, candidate, promise));
             
-        } catch (Exception e) {
-            Log.e(TAG, "Error extracting face region", e);
-            return null;
+        } catch (RejectedExecutionException e) {
+            Log.e(TAG, "Worker pool rejected verification", e);
+            promise.reject("ERROR", "Face comparison unavailable: " + e.getMessage());
         }
     }
     
-    private void cleanup(Bitmap bitmap1, Bitmap bitmap2) {
+    @ReactMethod
+    public void unenroll(String userId, Promise promise) {
         try {
-            if (bitmap1 != null && !bitmap1.isRecycled()) {
-                bitmap1.recycle();
-            }
-            if (bitmap2 != null && !bitmap2.isRecycled()) {
-                bitmap2.recycle();
-            }
-        } catch (Exception e) {
-            Log.e(TAG, "Error during cleanup", e);
+            Tasks.call(executorService, () -> templateStore.remove(userId))
+                .addOnCompleteListener(executorService, task -> promise.resolve(task.isSuccessful() && task.getResult()));
+        } catch (RejectedExecutionException e) {
+            promise.reject("ERROR", "Face comparison unavailable: " + e.getMessage());
         }
     }
     
-    private Bitmap loadAndOrientBitmap(String path) {
+    private void onVerifyReady(String userId, Task<FaceTemplate> reference, Task<DetectedImage> candidate, Promise promise) {
+        PipelineTrace.begin(VERIFY_SECTION);
         try {
-            String filePath = path.replace("file://", "");
-            File file = new File(filePath);
-            
-            if (!file.exists()) {
-                Log.e(TAG, "File does not exist: " + filePath);
-                return null;
+            if (!reference.isSuccessful()) {
+                Exception e = reference.getException();
+                Log.e(TAG, "Failed to read face template", e);
+                promise.reject("STORAGE_ERROR", "Failed to read face template: " + (e != null ? e.getMessage() : "cancelled"));
+                return;
             }
-
-            // First, get image dimensions without loading full bitmap
-            BitmapFactory.Options bounds = new BitmapFactory.Options();
-            bounds.inJustDecodeBounds = true;
-            BitmapFactory.decodeFile(filePath, bounds);
-            
-            // Calculate sample size for memory optimization
-            int sampleSize = calculateSampleSize(bounds.outWidth, bounds.outHeight, MAX_IMAGE_SIZE);
-            
-            // Load optimized bitmap
-            BitmapFactory.Options options = new BitmapFactory.Options();
-            options.inPreferredConfig = Bitmap.Config.RGB_565; // Use less memory
-            options.inSampleSize = sampleSize;
-            options.inMutable = true;
             
-            Bitmap bitmap = BitmapFactory.decodeFile(filePath, options);
-            
-            if (bitmap == null) {
-                Log.e(TAG, "Failed to decode bitmap from: " + filePath);
-                return null;
+            FaceTemplate template = reference.getResult();
+            if (template == null) {
+                promise.reject("NOT_ENROLLED", "No face enrolled for " + userId);
+                return;
             }
-
-            // Handle orientation efficiently
-            return handleOrientation(bitmap, filePath);
             
-        } catch (OutOfMemoryError e) {
-            Log.e(TAG, "Out of memory loading bitmap: " + path, e);
-            System.gc(); // Suggest garbage collection
-            return null;
+            DetectedImage image = getDetectedImage(candidate);
+            WritableMap result = compareWithTemplate(template, image);
+            putDecodeMetrics(result, image);
+            promise.resolve(result);
+            
         } catch (Exception e) {
-            Log.e(TAG, "Error loading bitmap", e);
-            return null;
+            rejectWith(promise, e);
+        } finally {
+            release(candidate);
+            PipelineTrace.end();
         }
     }
     
-    private int calculateSampleSize(int width, int height, int maxSize) {
-        int sampleSize = 1;
-        if (height > maxSize || width > maxSize) {
-            final int halfHeight = height / 2;
-            final int halfWidth = width / 2;
-            
-            while ((halfHeight / sampleSize) >= maxSize && (halfWidth / sampleSize) >= maxSize) {
-                sampleSize *= 2;
-            }
+    // Starts continuous verification of camera frames against the enrolled face.
+    // Options: stableFrames (K), tolerance (max confidence spread over K frames).
+    @ReactMethod
+    public void startLiveVerification(String userId, ReadableMap options, Promise promise) {
+        int stableFrames = options != null && options.hasKey("stableFrames") ? options.getInt("stableFrames") : DEFAULT_STABLE_FRAMES;
+        double tolerance = options != null && options.hasKey("tolerance") ? options.getDouble("tolerance") : DEFAULT_STABLE_TOLERANCE;
+        if (stableFrames < 1) {
+            promise.reject("ERROR", "stableFrames must be at least 1");
+            return;
+        }
+        
+        try {
+            Tasks.call(executorService, () -> templateStore.load(userId))
+                .addOnCompleteListener(executorService, task -> {
+                    if (!task.isSuccessful()) {
+                        Exception e = task.getException();
+                        Log.e(TAG, "Failed to read face template", e);
+                        promise.reject("STORAGE_ERROR", "Failed to read face template: " + (e != null ? e.getMessage() : "cancelled"));
+                        return;
+                    }
+                    FaceTemplate template = task.getResult();
+                    if (template == null || !template.hasFace()) {
+                        promise.reject("NOT_ENROLLED", "No face enrolled for " + userId);
+                        return;
+                    }
+                    
+                    LiveVerificationSession session = new LiveVerificationSession(userId, template.faceFeatures,
+                        getTrackingDetector(), executorService, new MatchStabilizer(stableFrames, FaceScores.FACE_MATCH_THRESHOLD, tolerance),
+                        this::emitLiveMatch, metrics);
+                    LiveVerificationSession previous = liveSession;
+                    liveSession = session;
+                    if (previous != null) {
+                        previous.close();
+                    }
+                    promise.resolve(null);
+                });
+        } catch (RejectedExecutionException e) {
+            promise.reject("ERROR", "Face comparison unavailable: " + e.getMessage());
         }
-        return sampleSize;
     }
     
-    private Bitmap handleOrientation(Bitmap bitmap, String filePath) {
+    // Feeds one base64 NV21 frame to the live session; frames arriving while the
+    // previous one is still being processed replace each other
+    @ReactMethod
+    public void submitFrame(String base64Nv21, int width, int height, int rotationDegrees) {
+        LiveVerificationSession session = liveSession;
+        if (session == null) {
+            return;
+        }
         try {
-            ExifInterface exif = new ExifInterface(filePath);
-            int orientation = exif.getAttributeInt(ExifInterface.TAG_ORIENTATION, ExifInterface.ORIENTATION_NORMAL);
-            
-            if (orientation == ExifInterface.ORIENTATION_NORMAL) {
-                return bitmap;
-            }
-            
-            Matrix matrix = new Matrix();
-            switch (orientation) {
-                case ExifInterface.ORIENTATION_ROTATE_90:
-                    matrix.postRotate(90);
-                    break;
-                case ExifInterface.ORIENTATION_ROTATE_180:
-                    matrix.postRotate(180);
-                    break;
-                case ExifInterface.ORIENTATION_ROTATE_270:
-                    matrix.postRotate(270);
-                    break;
-                default:
-                    return bitmap;
-            }
-            
-            Bitmap rotated = Bitmap.createBitmap(bitmap, 0, 0, bitmap.getWidth(), bitmap.getHeight(), matrix, true);
-            if (rotated != bitmap) {
-                bitmap.recycle();
-            }
-            return rotated;
-            
-        } catch (IOException e) {
-            Log.w(TAG, "Failed to read EXIF data", e);
-            return bitmap;
+            session.submit(new YuvFrame(Base64.decode(base64Nv21, Base64.DEFAULT), width, height, rotationDegrees));
+        } catch (IllegalArgumentException e) {
+            Log.w(TAG, "Ignoring malformed live frame", e);
         }
     }
     
-    private double[] extractFaceFeatures(Bitmap faceBitmap) {
-        // Check cache first
-        String cacheKey = generateCacheKey(faceBitmap);
-        double[] cachedFeatures = featureCache.get(cacheKey);
-        if (cachedFeatures != null) {
-            Log.d(TAG, "Using cached features");
-            return cachedFeatures;
+    @ReactMethod
+    public void stopLiveVerification(Promise promise) {
+        LiveVerificationSession session = liveSession;
+        liveSession = null;
+        if (session == null) {
+            promise.resolve(null);
+            return;
         }
-        
-        // Extract optimized features from FACE REGION ONLY
-        double[] features = new double[64]; // Reduced feature vector size for performance
-        int index = 0;
-        
-        // 1. Optimized skin tone features (16 values)
-        double[] skinTone = extractOptimizedSkinTone(faceBitmap);
-        System.arraycopy(skinTone, 0, features, index, skinTone.length);
-        index += skinTone.length;
-        
-        // 2. Spatial color distribution (24 values - 3x3 grid)
-        double[] spatial = extractOptimizedSpatialFeatures(faceBitmap);
-        System.arraycopy(spatial, 0, features, index, spatial.length);
-        index += spatial.length;
-        
-        // 3. Color histogram (24 values - reduced bins)
-        double[] histogram = extractOptimizedHistogram(faceBitmap);
-        System.arraycopy(histogram, 0, features, index, histogram.length);
-        
-        // Cache the features
-        featureCache.put(cacheKey, features);
-        
-        return features;
+        session.close();
+        
+        WritableMap stats = Arguments.createMap();
+        stats.putDouble("processedFrames", session.processedCount());
+        stats.putDouble("droppedFrames", session.droppedCount());
+        stats.putDouble("reusedFrames", session.reusedCount());
+        stats.putDouble("matches", session.matchCount());
+        promise.resolve(stats);
     }
     
-    private String generateCacheKey(Bitmap bitmap) {
-        // Simple hash based on bitmap properties
-        return String.valueOf(bitmap.getWidth() * bitmap.getHeight() * bitmap.getConfig().hashCode());
+    // Consecutive frames need tracking IDs, still photos must stay independent,
+    // so live sessions get their own detector
+    private synchronized FaceDetector getTrackingDetector() {
+        if (trackingDetector == null) {
+            trackingDetector = FaceDetection.getClient(AdaptiveDetector.options(false, true));
+        }
+        return trackingDetector;
     }
     
-    private double[] extractOptimizedSkinTone(Bitmap bitmap) {
-        double[] features = new double[16];
-        int width = bitmap.getWidth();
-        int height = bitmap.getHeight();
-        
-        // Sample pixels efficiently (every 4th pixel)
-        int step = Math.max(1, Math.min(width, height) / 50);
-        
-        double sumR = 0, sumG = 0, sumB = 0;
-        double sumR2 = 0, sumG2 = 0, sumB2 = 0;
-        int count = 0;
-        
-        for (int y = 0; y < height; y += step) {
-            for (int x = 0; x < width; x += step) {
-                int pixel = bitmap.getPixel(x, y);
-                int r = (pixel >> 16) & 0xff;
-                int g = (pixel >> 8) & 0xff;
-                int b = pixel & 0xff;
-                
-                if (isSkinTone(r, g, b)) {
-                    sumR += r; sumG += g; sumB += b;
-                    sumR2 += r * r; sumG2 += g * g; sumB2 += b * b;
-                    count++;
-                }
-            }
+    // Required by NativeEventEmitter
+    @ReactMethod
+    public void addListener(String eventName) {
+    }
+    
+    @ReactMethod
+    public void removeListeners(double count) {
+    }
+    
+    private void emitLiveMatch(LiveVerificationSession session, double confidence) {
+        if (session != liveSession || !getReactApplicationContext().hasActiveReactInstance()) {
+            return;
         }
-        
-        if (count > 0) {
-            double meanR = sumR / count, meanG = sumG / count, meanB = sumB / count;
-            features[0] = meanR / 255.0;
-            features[1] = meanG / 255.0;
-            features[2] = meanB / 255.0;
-            features[3] = Math.sqrt(sumR2 / count - meanR * meanR) / 255.0;
-            features[4] = Math.sqrt(sumG2 / count - meanG * meanG) / 255.0;
-            features[5] = Math.sqrt(sumB2 / count - meanB * meanB) / 255.0;
-            features[6] = (double) count / ((width / step) * (height / step));
+        WritableMap event = Arguments.createMap();
+        event.putString("userId", session.userId);
+        event.putBoolean("isMatch", true);
+        event.putDouble("confidence", confidence);
+        getReactApplicationContext()
+            .getJSModule(DeviceEventManagerModule.RCTDeviceEventEmitter.class)
+            .emit(LIVE_MATCH_EVENT, event);
+    }
+    
+    @ReactMethod
+    public void getCacheStats(Promise promise) {
+        long hits = featureCache.hitCount();
+        long misses = featureCache.missCount();
+        
+        WritableMap stats = Arguments.createMap();
+        stats.putDouble("hits", hits);
+        stats.putDouble("misses", misses);
+        stats.putDouble("evictions", featureCache.evictionCount());
+        stats.putDouble("hitRate", hits + misses > 0 ? (double) hits / (hits + misses) : 0);
+        stats.putInt("sizeBytes", featureCache.sizeBytes());
+        stats.putInt("budgetBytes", featureCache.budgetBytes());
+        promise.resolve(stats);
+    }
+    
+    @ReactMethod
+    public void setCacheBudget(int budgetBytes, Promise promise) {
+        if (budgetBytes <= 0) {
+            promise.reject("ERROR", "Cache budget must be positive");
+            return;
         }
-        
-        return features;
+        featureCache.resize(budgetBytes);
+        promise.resolve(featureCache.budgetBytes());
     }
     
-    private double[] extractOptimizedSpatialFeatures(Bitmap bitmap) {
-        double[] features = new double[27]; // 3x3 grid, RGB
-        int width = bitmap.getWidth();
-        int height = bitmap.getHeight();
-        int gridSize = 3;
+    // Per-stage latency (count, mean, p50, p90, p99, max in ms) and pipeline
+    // counters since the last reset. Percentiles come from fixed histogram
+    // buckets, so they can read up to 50% high.
+    @ReactMethod
+    public void getMetrics(Promise promise) {
+        WritableMap stages = Arguments.createMap();
+        for (int stage = 0; stage < PipelineMetrics.STAGE_NAMES.length; stage++) {
+            WritableMap latency = Arguments.createMap();
+            latency.putDouble("count", metrics.count(stage));
+            latency.putDouble("meanMs", metrics.meanMillis(stage));
+            latency.putDouble("p50Ms", metrics.percentileMillis(stage, 0.50));
+            latency.putDouble("p90Ms", metrics.percentileMillis(stage, 0.90));
+            latency.putDouble("p99Ms", metrics.percentileMillis(stage, 0.99));
+            latency.putDouble("maxMs", metrics.maxMillis(stage));
+            stages.putMap(PipelineMetrics.STAGE_NAMES[stage], latency);
+        }
         
-        int cellWidth = width / gridSize;
-        int cellHeight = height / gridSize;
+        WritableMap counters = Arguments.createMap();
+        for (int counter = 0; counter < PipelineMetrics.COUNTER_NAMES.length; counter++) {
+            counters.putDouble(PipelineMetrics.COUNTER_NAMES[counter], metrics.counter(counter));
+        }
         
-        for (int gy = 0; gy < gridSize; gy++) {
-            for (int gx = 0; gx < gridSize; gx++) {
-                double sumR = 0, sumG = 0, sumB = 0;
-                int count = 0;
-                
-                int startX = gx * cellWidth;
-                int endX = Math.min((gx + 1) * cellWidth, width);
-                int startY = gy * cellHeight;
-                int endY = Math.min((gy + 1) * cellHeight, height);
-                
-                // Sample every 4th pixel for performance
-                for (int y = startY; y < endY; y += 4) {
-                    for (int x = startX; x < endX; x += 4) {
-                        int pixel = bitmap.getPixel(x, y);
-                        sumR += (pixel >> 16) & 0xff;
-                        sumG += (pixel >> 8) & 0xff;
-                        sumB += pixel & 0xff;
-                        count++;
-                    }
+        long hits = featureCache.hitCount();
+        long misses = featureCache.missCount();
+        WritableMap cache = Arguments.createMap();
+        cache.putDouble("hits", hits);
+        cache.putDouble("misses", misses);
+        cache.putDouble("hitRate", hits + misses > 0 ? (double) hits / (hits + misses) : 0);
+        
+        WritableMap result = Arguments.createMap();
+        result.putMap("stages", stages);
+        result.putMap("counters", counters);
+        result.putMap("cache", cache);
+        result.putDouble("sinceResetMs", metrics.sinceResetMillis());
+        promise.resolve(result);
+    }
+    
+    // Switches android.os.Trace sections for each stage on or off, for Perfetto
+    // or systrace captures of the app (category "app" / -a com.photoleloapp)
+    @ReactMethod
+    public void setTracingEnabled(boolean enabled) {
+        PipelineTrace.setEnabled(enabled);
+    }
+    
+    // Clears the latency histograms, counters and cache hit/miss counts
+    @ReactMethod
+    public void resetMetrics(Promise promise) {
+        metrics.reset();
+        featureCache.resetCounters();
+        promise.resolve(null);
+    }
+    
+    private Task<DetectedImage> decodeAndDetect(String path) {
+        long deadline = SystemClock.elapsedRealtime() + DETECTION_DEADLINE_MS;
+        
+        // Stage one: a small preview is enough for detection
+        return Tasks.call(executorService, () -> imageLoader.load(path))
+            .continueWithTask(executorService, decoded -> {
+                FaceImageLoader.LoadedImage loaded = decoded.isSuccessful() ? decoded.getResult() : null;
+                if (loaded == null) {
+                    throw new ComparisonException("ERROR", "Failed to load images");
                 }
+                Bitmap bitmap = loaded.preview;
                 
-                int idx = (gy * gridSize + gx) * 3;
-                if (count > 0) {
-                    features[idx] = sumR / (count * 255.0);
-                    features[idx + 1] = sumG / (count * 255.0);
-                    features[idx + 2] = sumB / (count * 255.0);
-                }
-            }
+                if (DEBUG) Log.d(TAG, "Image loaded: " + bitmap.getWidth() + "x" + bitmap.getHeight()
+                    + " preview of " + loaded.sourceWidth + "x" + loaded.sourceHeight);
+                
+                // Detect faces; the detector applies the EXIF rotation itself and
+                // reports bounding boxes in upright coordinates. A FAST miss
+                // escalates to ACCURATE and other rotations before the fallback.
+                // Callbacks are delivered on the worker pool instead of the main looper
+                return detectors.detect(bitmap, loaded.rotationDegrees(), deadline)
+                    .continueWith(executorService, detected -> {
+                        if (!detected.isSuccessful()) {
+                            Exception e = detected.getException();
+                            Log.e(TAG, "Face detection failed for " + FaceImageLoader.describe(path), e);
+                            imageLoader.release(loaded);
+                            throw new ComparisonException("DETECTION_ERROR",
+                                "Face detection failed: " + (e != null ? e.getMessage() : "cancelled"));
+                        }
+                        AdaptiveDetector.Result result = detected.getResult();
+                        if (DEBUG) Log.d(TAG, "Faces detected in " + FaceImageLoader.describe(path) + ": "
+                            + result.faces.size() + " (" + result.pass + ")");
+                        return new DetectedImage(loaded, result);
+                    });
+            });
+    }
+
+    private void onImagesDetected(Task<DetectedImage> task1, Task<DetectedImage> task2, Promise promise) {
+        PipelineTrace.begin(COMPARE_SECTION);
+        try {
+            DetectedImage image1 = getDetectedImage(task1);
+            DetectedImage image2 = getDetectedImage(task2);
+            
+            WritableMap result = compareDetectedImages(image1, image2);
+            putDecodeMetrics(result, image1, image2);
+            promise.resolve(result);
+            
+        } catch (Exception e) {
+            rejectWith(promise, e);
+        } finally {
+            release(task1);
+            release(task2);
+            PipelineTrace.end();
         }
-        
-        return features;
     }
     
-    private double[] extractOptimizedHistogram(Bitmap bitmap) {
-        double[] features = new double[24]; // 8 bins per channel
-        int[] histR = new int[8], histG = new int[8], histB = new int[8];
-        
-        int width = bitmap.getWidth();
-        int height = bitmap.getHeight();
-        int totalPixels = 0;
-        
-        // Sample every 4th pixel for performance
-        for (int y = 0; y < height; y += 4) {
-            for (int x = 0; x < width; x += 4) {
-                int pixel = bitmap.getPixel(x, y);
-                int r = (pixel >> 16) & 0xff;
-                int g = (pixel >> 8) & 0xff;
-                int b = pixel & 0xff;
-                
-                histR[r / 32]++;
-                histG[g / 32]++;
-                histB[b / 32]++;
-                totalPixels++;
-            }
+    private WritableMap compareDetectedImages(DetectedImage image1, DetectedImage image2) throws ComparisonException {
+        ScratchArena arena = ScratchArena.forCurrentThread();
+        
+        if (image1.faces.isEmpty() || image2.faces.isEmpty()) {
+            Log.w(TAG, "No face detected in " + (image1.faces.isEmpty() ? "first" : "second") + " image, using fallback comparison");
+            // Fallback to full image comparison
+            return performFallbackComparison(
+                extractFallbackFeatures(image1, arena.features1),
+                extractFallbackFeatures(image2, arena.features2));
         }
         
-        // Normalize
-        for (int i = 0; i < 8; i++) {
-            features[i] = (double) histR[i] / totalPixels;
-            features[i + 8] = (double) histG[i] / totalPixels;
-            features[i + 16] = (double) histB[i] / totalPixels;
-        }
+        // Get the largest face from each image and extract features from face regions only
+        float[] features1 = extractFaceRegionFeatures(image1, getLargestFace(image1.faces), arena.features1);
+        float[] features2 = extractFaceRegionFeatures(image2, getLargestFace(image2.faces), arena.features2);
         
-        return features;
+        return scoreFaceFeatures(features1, features2);
     }
     
-    private double[] extractSkinToneFeatures(Bitmap bitmap) {
-        int width = bitmap.getWidth();
-        int height = bitmap.getHeight();
+    private WritableMap compareWithTemplate(FaceTemplate reference, DetectedImage candidate) throws ComparisonException {
+        ScratchArena arena = ScratchArena.forCurrentThread();
         
-        double[] features = new double[12];
-        
-        double sumR = 0, sumG = 0, sumB = 0;
-        double sumR2 = 0, sumG2 = 0, sumB2 = 0;
-        int count = 0;
-        
-        for (int y = 0; y < height; y++) {
-            for (int x = 0; x < width; x++) {
-                int pixel = bitmap.getPixel(x, y);
-                int r = (pixel >> 16) & 0xff;
-                int g = (pixel >> 8) & 0xff;
-                int b = pixel & 0xff;
-                
-                if (isSkinTone(r, g, b)) {
-                    sumR += r;
-                    sumG += g;
-                    sumB += b;
-                    sumR2 += r * r;
-                    sumG2 += g * g;
-                    sumB2 += b * b;
-                    count++;
-                }
-            }
+        if (!reference.hasFace() || candidate.faces.isEmpty()) {
+            Log.w(TAG, "No face detected in " + (reference.hasFace() ? "candidate" : "reference") + " image, using fallback comparison");
+            return performFallbackComparison(reference.fullImageFeatures,
+                extractFallbackFeatures(candidate, arena.features1));
         }
         
-        if (count > 0) {
-            double meanR = sumR / count;
-            double meanG = sumG / count;
-            double meanB = sumB / count;
-            
-            double stdR = Math.sqrt(sumR2 / count - meanR * meanR);
-            double stdG = Math.sqrt(sumG2 / count - meanG * meanG);
-            double stdB = Math.sqrt(sumB2 / count - meanB * meanB);
-            
-            features[0] = meanR / 255.0;
-            features[1] = meanG / 255.0;
-            features[2] = meanB / 255.0;
-            features[3] = stdR / 255.0;
-            features[4] = stdG / 255.0;
-            features[5] = stdB / 255.0;
-            features[6] = (double) count / (width * height);
-        }
-        
-        return features;
+        float[] features = extractFaceRegionFeatures(candidate, getLargestFace(candidate.faces), arena.features1);
+        return scoreFaceFeatures(reference.faceFeatures, features);
     }
     
-    private boolean isSkinTone(int r, int g, int b) {
-        return r > 95 && g > 40 && b > 20 &&
-               r > g && r > b &&
-               Math.abs(r - g) > 15 &&
-               r - Math.min(g, b) > 15;
+    private FaceTemplate buildTemplate(Task<DetectedImage> task) throws ComparisonException {
+        DetectedImage image = getDetectedImage(task);
+        try {
+            // Templates outlive the comparison, so they get their own vectors
+            float[] faceFeatures = image.faces.isEmpty() ? null
+                : extractFaceRegionFeatures(image, getLargestFace(image.faces), FeatureLayout.newVector());
+            // Kept so candidates without a detectable face can still be scored
+            return new FaceTemplate(faceFeatures, extractFallbackFeatures(image, FeatureLayout.newVector()));
+        } finally {
+            imageLoader.release(image.image);
+        }
     }
     
-    private double[] extractSpatialColorFeatures(Bitmap bitmap) {
-        int width = bitmap.getWidth();
-        int height = bitmap.getHeight();
-        int gridSize = 4;
-        
-        double[] features = new double[gridSize * gridSize * 3];
+    private float[] extractFaceRegionFeatures(DetectedImage detected, Face face, float[] out) throws ComparisonException {
+        PixelRaster raster = ScratchArena.forCurrentThread().raster;
+        int rotation = detected.rotation;
         
-        int cellWidth = width / gridSize;
-        int cellHeight = height / gridSize;
-        
-        for (int gy = 0; gy < gridSize; gy++) {
-            for (int gx = 0; gx < gridSize; gx++) {
-                double sumR = 0, sumG = 0, sumB = 0;
-                int count = 0;
-                
-                int startX = gx * cellWidth;
-                int endX = Math.min((gx + 1) * cellWidth, width);
-                int startY = gy * cellHeight;
-                int endY = Math.min((gy + 1) * cellHeight, height);
-                
-                for (int y = startY; y < endY; y++) {
-                    for (int x = startX; x < endX; x++) {
-                        int pixel = bitmap.getPixel(x, y);
-                        sumR += (pixel >> 16) & 0xff;
-                        sumG += (pixel >> 8) & 0xff;
-                        sumB += pixel & 0xff;
-                        count++;
-                    }
+        // Stage two: decode only the padded face rectangle from the original file
+        long start = PipelineMetrics.begin(PipelineMetrics.CROP);
+        try {
+            Bitmap faceBitmap = imageLoader.decodeFaceRegion(detected.image, rotation, face.getBoundingBox());
+            if (faceBitmap != null) {
+                try {
+                    loadRaster(faceBitmap, rotation, raster);
+                } finally {
+                    imageLoader.releaseBitmap(faceBitmap);
                 }
-                
-                int idx = (gy * gridSize + gx) * 3;
-                features[idx] = sumR / (count * 255.0);
-                features[idx + 1] = sumG / (count * 255.0);
-                features[idx + 2] = sumB / (count * 255.0);
+            } else {
+                // Read the padded face region straight out of the preview instead
+                metrics.increment(PipelineMetrics.PREVIEW_CROPS);
+                Rect region = extractFaceRegion(detected, face);
+                if (region == null) {
+                    throw new ComparisonException("ERROR", "Failed to extract face regions");
+                }
+                loadRaster(detected.bitmap, region.left, region.top, region.width(), region.height(), rotation, raster);
             }
+        } finally {
+            metrics.end(PipelineMetrics.CROP, start);
         }
         
-        return features;
+        return extractFaceFeatures(raster, out);
     }
     
-    private double[] extractColorFeatures(Bitmap bitmap) {
-        int[] histR = new int[16];
-        int[] histG = new int[16];
-        int[] histB = new int[16];
+    private WritableMap scoreFaceFeatures(float[] features1, float[] features2) {
+        metrics.increment(PipelineMetrics.COMPARISONS);
         
-        int width = bitmap.getWidth();
-        int height = bitmap.getHeight();
+        // Calculate similarity
+        long start = PipelineMetrics.begin(PipelineMetrics.DISTANCE);
+        double distance = FaceScores.euclideanDistance(features1, features2);
+        metrics.end(PipelineMetrics.DISTANCE, start);
         
-        for (int y = 0; y < height; y++) {
-            for (int x = 0; x < width; x++) {
-                int pixel = bitmap.getPixel(x, y);
-                int r = (pixel >> 16) & 0xff;
-                int g = (pixel >> 8) & 0xff;
-                int b = pixel & 0xff;
-                
-                histR[r / 16]++;
-                histG[g / 16]++;
-                histB[b / 16]++;
-            }
+        if (DEBUG) {
+            Log.d(TAG, "Raw distance: " + distance);
+            Log.d(TAG, "Feature vector length: " + features1.length);
         }
         
-        double[] features = new double[48];
-        int totalPixels = width * height;
-        for (int i = 0; i < 16; i++) {
-            features[i] = (double) histR[i] / totalPixels;
-            features[i + 16] = (double) histG[i] / totalPixels;
-            features[i + 32] = (double) histB[i] / totalPixels;
-        }
+        double confidence = FaceScores.faceConfidence(distance);
+        
+        if (DEBUG) Log.d(TAG, "Confidence: " + confidence + "%");
+        
+        boolean isMatch = confidence >= FaceScores.FACE_MATCH_THRESHOLD;
         
-        return features;
+        if (DEBUG) Log.d(TAG, "Threshold: 70%, Match: " + isMatch);
+
+        WritableMap result = Arguments.createMap();
+        result.putBoolean("isMatch", isMatch);
+        result.putDouble("confidence", confidence);
+        result.putString("message", isMatch ? 
+            "Face verified successfully!" : 
+            "Face does not match. Confidence: " + String.format("%.1f", confidence) + "%");
+        return result;
     }
     
-    private double[] extractTextureFeatures(Bitmap bitmap) {
-        int width = bitmap.getWidth();
-        int height = bitmap.getHeight();
-        double[] features = new double[16];
-        
-        for (int y = 1; y < height - 1; y++) {
-            for (int x = 1; x < width - 1; x++) {
-                int center = getGrayscale(bitmap.getPixel(x, y));
-                int pattern = 0;
-                
-                if (getGrayscale(bitmap.getPixel(x-1, y-1)) >= center) pattern |= 1;
-                if (getGrayscale(bitmap.getPixel(x, y-1)) >= center) pattern |= 2;
-                if (getGrayscale(bitmap.getPixel(x+1, y-1)) >= center) pattern |= 4;
-                if (getGrayscale(bitmap.getPixel(x+1, y)) >= center) pattern |= 8;
-                
-                features[pattern % 16]++;
-            }
+    // Reports how each image was decoded so oversized decodes show up in the results
+    private static void putDecodeMetrics(WritableMap result, DetectedImage... images) {
+        WritableArray decode = Arguments.createArray();
+        for (DetectedImage image : images) {
+            DecodePlan plan = image.image.plan;
+            WritableMap entry = Arguments.createMap();
+            entry.putInt("sourceWidth", plan.sourceWidth);
+            entry.putInt("sourceHeight", plan.sourceHeight);
+            entry.putInt("sampleSize", plan.sampleSize);
+            entry.putDouble("scale", plan.scale());
+            entry.putInt("width", image.bitmap.getWidth());
+            entry.putInt("height", image.bitmap.getHeight());
+            entry.putInt("rotation", image.rotation);
+            entry.putString("detection", image.detection);
+            decode.pushMap(entry);
         }
         
-        double total = (width - 2) * (height - 2);
-        for (int i = 0; i < features.length; i++) {
-            features[i] /= total;
+        WritableMap metrics = Arguments.createMap();
+        metrics.putArray("decode", decode);
+        result.putMap("metrics", metrics);
+    }
+    
+    private DetectedImage getDetectedImage(Task<DetectedImage> task) throws ComparisonException {
+        if (task.isSuccessful()) {
+            return task.getResult();
         }
-        
-        return features;
+        Exception e = task.getException();
+        if (e instanceof ComparisonException) {
+            throw (ComparisonException) e;
+        }
+        throw new ComparisonException("ERROR", e != null ? e.getMessage() : "Face comparison cancelled");
     }
     
-    private double[] extractEdgeFeatures(Bitmap bitmap) {
-        int width = bitmap.getWidth();
-        int height = bitmap.getHeight();
-        double[] features = new double[16];
-        
-        for (int y = 1; y < height - 1; y++) {
-            for (int x = 1; x < width - 1; x++) {
-                int gx = -getGrayscale(bitmap.getPixel(x-1, y-1)) + getGrayscale(bitmap.getPixel(x+1, y-1))
-                       - 2*getGrayscale(bitmap.getPixel(x-1, y)) + 2*getGrayscale(bitmap.getPixel(x+1, y))
-                       - getGrayscale(bitmap.getPixel(x-1, y+1)) + getGrayscale(bitmap.getPixel(x+1, y+1));
-                
-                int gy = -getGrayscale(bitmap.getPixel(x-1, y-1)) - 2*getGrayscale(bitmap.getPixel(x, y-1)) - getGrayscale(bitmap.getPixel(x+1, y-1))
-                       + getGrayscale(bitmap.getPixel(x-1, y+1)) + 2*getGrayscale(bitmap.getPixel(x, y+1)) + getGrayscale(bitmap.getPixel(x+1, y+1));
-                
-                int magnitude = (int) Math.sqrt(gx*gx + gy*gy);
-                features[Math.min(15, magnitude / 16)]++;
-            }
+    private void release(Task<DetectedImage> task) {
+        if (task.isSuccessful() && task.getResult() != null) {
+            imageLoader.release(task.getResult().image);
+        }
+    }
+    
+    private void rejectWith(Promise promise, Exception e) {
+        if (e instanceof ComparisonException) {
+            promise.reject(((ComparisonException) e).code, e.getMessage());
+        } else {
+            Log.e(TAG, "Error in compareFaces", e);
+            promise.reject("ERROR", e != null ? e.getMessage() : "Face comparison cancelled");
         }
+    }
+    
+    static Face getLargestFace(List<Face> faces) {
+        Face largest = faces.get(0);
+        int maxArea = 0;
         
-        double total = (width - 2) * (height - 2);
-        for (int i = 0; i < features.length; i++) {
-            features[i] /= total;
+        for (Face face : faces) {
+            Rect bounds = face.getBoundingBox();
+            int area = bounds.width() * bounds.height();
+            if (area > maxArea) {
+                maxArea = area;
+                largest = face;
+            }
         }
         
-        return features;
+        return largest;
     }
     
-    private int getGrayscale(int pixel) {
-        int r = (pixel >> 16) & 0xff;
-        int g = (pixel >> 8) & 0xff;
-        int b = pixel & 0xff;
-        return (int) (0.299 * r + 0.587 * g + 0.114 * b);
+    // Padded face rectangle in stored preview coordinates, or null if it is empty
+    private Rect extractFaceRegion(DetectedImage detected, Face face) {
+        try {
+            // Add 30% padding around face; the preview is stored unrotated, so
+            // this is the matching stored rectangle
+            Rect region = FaceImageLoader.paddedSourceRect(face.getBoundingBox(),
+                detected.rotation, detected.bitmap.getWidth(), detected.bitmap.getHeight());
+            if (region == null) {
+                return null;
+            }
+            
+            if (DEBUG) Log.d(TAG, "Extracting face region: " + region.left + "," + region.top + " " + region.width() + "x" + region.height());
+            
+            return region;
+            
+        } catch (Exception e) {
+            Log.e(TAG, "Error extracting face region", e);
+            return null;
+        }
     }
     
-    private double calculateEuclideanDistance(double[] features1, double[] features2) {
-        double sum = 0;
-        int length = Math.min(features1.length, features2.length);
-        for (int i = 0; i < length; i++) {
-            double diff = features1[i] - features2[i];
-            sum += diff * diff;
+    // Fingerprinting and every extractor scan the raster in place, reading it
+    // upright through its rotated (and possibly resampled) indexing
+    private float[] extractFaceFeatures(PixelRaster raster, float[] out) {
+        ScratchArena arena = ScratchArena.forCurrentThread();
+        long start = PipelineMetrics.begin(PipelineMetrics.EXTRACT);
+        try {
+            // Check cache first; the key only reads the pixels extraction samples
+            long cacheKey = arena.extractor.fingerprint(raster);
+            if (featureCache.get(cacheKey, out)) {
+                if (DEBUG) Log.d(TAG, "Using cached features");
+                return out;
+            }
+            
+            // Extract optimized features from FACE REGION ONLY, in one fused pass
+            // written straight into the FeatureLayout vector
+            arena.extractor.extract(raster, out);
+            
+            // Cache the features
+            featureCache.put(cacheKey, out);
+            
+            return out;
+        } finally {
+            metrics.end(PipelineMetrics.EXTRACT, start);
         }
-        return Math.sqrt(sum);
+    }
+    
+    private static PixelRaster loadRaster(Bitmap bitmap, int rotationDegrees, PixelRaster raster) {
+        return raster.load(new BitmapPixelSource(bitmap), rotationDegrees);
+    }
+    
+    // Copies the pixels out once; only the given stored rectangle is read (as
+    // ARGB, even from RGB_565 bitmaps), so crops never exist as a separate Bitmap
+    private static PixelRaster loadRaster(Bitmap bitmap, int left, int top, int width, int height,
+                                          int rotationDegrees, PixelRaster raster) {
+        return raster.load(new BitmapPixelSource(bitmap), left, top, width, height, rotationDegrees);
     }
     
     @Override
@@ -717,58 +751,209 @@ public class FaceComparisonModule extends ReactContextBaseJavaModule {
     }
     
     private void cleanup() {
+        LiveVerificationSession session = liveSession;
+        liveSession = null;
+        if (session != null) {
+            session.close();
+        }
         if (executorService != null && !executorService.isShutdown()) {
             executorService.shutdown();
         }
         if (featureCache != null) {
-            featureCache.evictAll();
+            featureCache.clear();
         }
-        if (detector != null) {
-            detector.close();
+        imageLoader.clear();
+        if (detectors != null) {
+            detectors.close();
+        }
+        synchronized (this) {
+            if (trackingDetector != null) {
+                trackingDetector.close();
+                trackingDetector = null;
+            }
         }
     }
     
-    private void performFallbackComparison(Bitmap bitmap1, Bitmap bitmap2, Promise promise) {
-        try {
-            Log.d(TAG, "Performing fallback full-image comparison");
+    private static final class DetectedImage {
+        final FaceImageLoader.LoadedImage image;
+        final Bitmap bitmap; // detection preview
+        final List<Face> faces;
+        final int rotation; // makes the preview upright; differs from EXIF after a rotated retry
+        final String detection; // detection pass that produced the faces
+        
+        DetectedImage(FaceImageLoader.LoadedImage image, AdaptiveDetector.Result detected) {
+            this.image = image;
+            this.bitmap = image.preview;
+            this.faces = detected.faces;
+            this.rotation = detected.rotationDegrees;
+            this.detection = detected.pass;
+        }
+    }
+    
+    private static final class ComparisonException extends Exception {
+        final String code;
+        
+        ComparisonException(String code, String message) {
+            super(message);
+            this.code = code;
+        }
+    }
+    
+    // Scores one reference template against many candidates. At most WORKER_COUNT
+    // candidate bitmaps are decoded at any time so memory stays bounded.
+    private final class BatchComparison {
+        private final FaceTemplate reference;
+        private final String[] candidatePaths;
+        private final WritableMap[] results;
+        private final Promise promise;
+        private final AtomicInteger nextIndex = new AtomicInteger();
+        private final AtomicInteger remaining;
+        
+        BatchComparison(FaceTemplate reference, String[] candidatePaths, Promise promise) {
+            this.reference = reference;
+            this.candidatePaths = candidatePaths;
+            this.results = new WritableMap[candidatePaths.length];
+            this.promise = promise;
+            this.remaining = new AtomicInteger(candidatePaths.length);
+        }
+        
+        void start() {
+            if (candidatePaths.length == 0) {
+                promise.resolve(Arguments.createArray());
+                return;
+            }
+            int lanes = Math.min(WORKER_COUNT, candidatePaths.length);
+            for (int i = 0; i < lanes; i++) {
+                next();
+            }
+        }
+        
+        private void next() {
+            int index = nextIndex.getAndIncrement();
+            if (index >= candidatePaths.length) {
+                return;
+            }
             
-            // Resize images to same size for comparison
+            try {
+                decodeAndDetect(candidatePaths[index])
+                    .addOnCompleteListener(executorService, task -> {
+                        results[index] = compareCandidate(index, task);
+                        next();
+                        complete();
+                    });
+            } catch (RejectedExecutionException e) {
+                results[index] = errorResult(index, "ERROR", "Face comparison unavailable: " + e.getMessage());
+                next();
+                complete();
+            }
+        }
+        
+        private WritableMap compareCandidate(int index, Task<DetectedImage> task) {
+            WritableMap result;
+            try {
+                DetectedImage candidate = getDetectedImage(task);
+                result = compareWithTemplate(reference, candidate);
+                putDecodeMetrics(result, candidate);
+            } catch (ComparisonException e) {
+                return errorResult(index, e.code, e.getMessage());
+            } catch (Exception e) {
+                Log.e(TAG, "Error comparing candidate " + index, e);
+                return errorResult(index, "ERROR", e.getMessage());
+            } finally {
+                release(task);
+            }
+            result.putInt("index", index);
+            result.putString("path", FaceImageLoader.describe(candidatePaths[index]));
+            return result;
+        }
+        
+        private WritableMap errorResult(int index, String code, String message) {
+            WritableMap result = Arguments.createMap();
+            result.putInt("index", index);
+            result.putString("path", FaceImageLoader.describe(candidatePaths[index]));
+            result.putBoolean("isMatch", false);
+            result.putDouble("confidence", 0);
+            result.putString("error", code);
+            result.putString("message", message);
+            return result;
+        }
+        
+        private void complete() {
+            if (remaining.decrementAndGet() != 0) {
+                return;
+            }
+            WritableArray array = Arguments.createArray();
+            for (WritableMap result : results) {
+                array.pushMap(result);
+            }
+            promise.resolve(array);
+        }
+    }
+    
+    private static class WorkerThreadFactory implements ThreadFactory {
+        private final AtomicInteger count = new AtomicInteger(1);
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(() -> {
+                // The user is waiting on these results, so stay near default:
+                // BACKGROUND lands in the background cgroup and the little cores.
+                // One step less favourable still yields to the UI and render threads.
+                Process.setThreadPriority(Process.THREAD_PRIORITY_DEFAULT + Process.THREAD_PRIORITY_LESS_FAVORABLE);
+                runnable.run();
+            }, "FaceComparison-worker-" + count.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+    
+    private float[] extractFallbackFeatures(DetectedImage image, float[] out) throws ComparisonException {
+        try {
+            // Sample images at the same size for comparison, without a resized copy
             int targetSize = 300;
-            Bitmap resized1 = Bitmap.createScaledBitmap(bitmap1, targetSize, targetSize, true);
-            Bitmap resized2 = Bitmap.createScaledBitmap(bitmap2, targetSize, targetSize, true);
+            PixelRaster raster;
+            long start = PipelineMetrics.begin(PipelineMetrics.CROP);
+            try {
+                raster = loadRaster(image.bitmap, image.rotation, ScratchArena.forCurrentThread().raster);
+                raster.resample(targetSize, targetSize);
+            } finally {
+                metrics.end(PipelineMetrics.CROP, start);
+            }
             
             // Extract features from full images
-            double[] features1 = extractFaceFeatures(resized1);
-            double[] features2 = extractFaceFeatures(resized2);
-            
-            resized1.recycle();
-            resized2.recycle();
-            
-            // Calculate similarity
-            double distance = calculateEuclideanDistance(features1, features2);
-            
-            Log.d(TAG, "Fallback - Raw distance: " + distance);
-            
-            // More strict threshold for full image comparison (85%)
-            double normalizedDistance = Math.min(distance / 3.5, 1.0);
-            double confidence = (1 - normalizedDistance) * 100;
-            
-            Log.d(TAG, "Fallback - Confidence: " + confidence + "%");
-            
-            boolean isMatch = confidence >= 85.0;
-            
-            WritableMap result = Arguments.createMap();
-            result.putBoolean("isMatch", isMatch);
-            result.putDouble("confidence", confidence);
-            result.putString("message", isMatch ? 
-                "Face verified successfully! (fallback mode)" : 
-                "Face does not match. Confidence: " + String.format("%.1f", confidence) + "% (fallback mode)");
-
-            promise.resolve(result);
+            return extractFaceFeatures(raster, out);
             
         } catch (Exception e) {
             Log.e(TAG, "Error in fallback comparison", e);
-            promise.reject("ERROR", "Fallback comparison failed: " + e.getMessage());
+            throw new ComparisonException("ERROR", "Fallback comparison failed: " + e.getMessage());
         }
     }
+    
+    private WritableMap performFallbackComparison(float[] features1, float[] features2) {
+        if (DEBUG) Log.d(TAG, "Performing fallback full-image comparison");
+        metrics.increment(PipelineMetrics.COMPARISONS);
+        metrics.increment(PipelineMetrics.FALLBACK_COMPARISONS);
+        
+        // Calculate similarity
+        long start = PipelineMetrics.begin(PipelineMetrics.DISTANCE);
+        double distance = FaceScores.euclideanDistance(features1, features2);
+        metrics.end(PipelineMetrics.DISTANCE, start);
+        
+        if (DEBUG) Log.d(TAG, "Fallback - Raw distance: " + distance);
+        
+        // More strict threshold for full image comparison (85%)
+        double confidence = FaceScores.fallbackConfidence(distance);
+        
+        if (DEBUG) Log.d(TAG, "Fallback - Confidence: " + confidence + "%");
+        
+        boolean isMatch = confidence >= FaceScores.FALLBACK_MATCH_THRESHOLD;
+        
+        WritableMap result = Arguments.createMap();
+        result.putBoolean("isMatch", isMatch);
+        result.putDouble("confidence", confidence);
+        result.putString("message", isMatch ? 
+            "Face verified successfully! (fallback mode)" : 
+            "Face does not match. Confidence: " + String.format("%.1f", confidence) + "% (fallback mode)");
+        return result;
+    }
 }
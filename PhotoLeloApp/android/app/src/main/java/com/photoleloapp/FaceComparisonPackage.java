@@ -1,25 +1,39 @@
 package com.photoleloapp;
 
-import com.facebook.react.ReactPackage;
+import com.facebook.react.BaseReactPackage;
 import com.facebook.react.bridge.NativeModule;
 import com.facebook.react.bridge.ReactApplicationContext;
-import com.facebook.react.uimanager.ViewManager;
+import com.facebook.react.module.model.ReactModuleInfo;
+import com.facebook.react.module.model.ReactModuleInfoProvider;
 
-import java.util.ArrayList;
 import java.util.Collections;
-import java.util.List;
+import java.util.Map;
 
-public class FaceComparisonPackage implements ReactPackage {
+// Registers FaceComparisonModule lazily: the module is only constructed when JS
+// first uses it, not while React Native starts up
+public class FaceComparisonPackage extends BaseReactPackage {
 
     @Override
-    public List<ViewManager> createViewManagers(ReactApplicationContext reactContext) {
-        return Collections.emptyList();
+    public NativeModule getModule(String name, ReactApplicationContext reactContext) {
+        if (FaceComparisonModule.NAME.equals(name)) {
+            return new FaceComparisonModule(reactContext);
+        }
+        return null;
     }
 
     @Override
-    public List<NativeModule> createNativeModules(ReactApplicationContext reactContext) {
-        List<NativeModule> modules = new ArrayList<>();
-        modules.add(new FaceComparisonModule(reactContext));
-        return modules;
+    public ReactModuleInfoProvider getReactModuleInfoProvider() {
+        return () -> {
+            Map<String, ReactModuleInfo> infos = Collections.singletonMap(FaceComparisonModule.NAME,
+                new ReactModuleInfo(
+                    FaceComparisonModule.NAME,
+                    FaceComparisonModule.class.getName(),
+                    false, // canOverrideExistingModule
+                    false, // needsEagerInit
+                    false, // isCxxModule
+                    false  // isTurboModule
+                ));
+            return infos;
+        };
     }
 }
@@ -0,0 +1,544 @@
+package com.photoleloapp;
+
+import android.content.ContentResolver;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
+import android.graphics.Rect;
+import android.media.ExifInterface;
+import android.net.Uri;
+import android.os.Build;
+import android.util.Base64;
+import android.util.Log;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+
+// Two-stage image loading. Stage one decodes a small preview that is
+// only used for detection (and the full-image fallback); stage two decodes just
+// the padded face rectangle from the original file at the resolution the
+// extractor needs, so full camera frames are never decoded at high resolution.
+// Each source is read exactly once; bounds, EXIF and both decode stages work
+// off the same in-memory bytes. Bitmaps are returned as stored in the file;
+// EXIF rotation is passed to the detector and applied by the raster's indexing
+// rather than by rotating a copy. Previews and face regions are decoded into
+// pooled bitmaps (inBitmap) that callers hand back, so a steady stream of
+// comparisons decodes without allocating new pixel memory.
+final class FaceImageLoader {
+    
+    private static final String TAG = "FaceComparison";
+    private static final boolean DEBUG = BuildConfig.DEBUG;
+    
+    static final int DETECTION_SIZE = 480; // Max preview dimension for detection
+    static final int FACE_REGION_SIZE = 512; // Min face crop dimension for extraction
+    private static final float FACE_PADDING = 0.3f;
+    
+    // Encoded file buffers are recycled between loads; oversized ones are left to the GC
+    private static final int MAX_POOLED_BUFFERS = 4;
+    private static final int MAX_POOLED_BUFFER_BYTES = 16 * 1024 * 1024;
+    private static final int BUFFER_GRANULE = 256 * 1024;
+    
+    private static final int MAX_ENCODED_BYTES = 64 * 1024 * 1024;
+    
+    // Mutable RGB_565 bitmaps kept for inBitmap; a preview and a face region per worker fit
+    private static final int MAX_POOLED_BITMAPS = 8;
+    private static final int MAX_POOLED_BITMAP_BYTES = 4 * 1024 * 1024;
+    
+    private static final String FILE_SCHEME = "file://";
+    private static final String CONTENT_SCHEME = "content://";
+    private static final String DATA_SCHEME = "data:";
+    
+    private final ContentResolver contentResolver;
+    private final PipelineMetrics metrics;
+    private final ArrayDeque<byte[]> bufferPool = new ArrayDeque<>();
+    private final ArrayDeque<Bitmap> bitmapPool = new ArrayDeque<>();
+    
+    FaceImageLoader(ContentResolver contentResolver, PipelineMetrics metrics) {
+        this.contentResolver = contentResolver;
+        this.metrics = metrics;
+    }
+    
+    // Encoded image bytes; data may be longer than length when pooled
+    private static final class Encoded {
+        final byte[] data;
+        final int length;
+        
+        Encoded(byte[] data, int length) {
+            this.data = data;
+            this.length = length;
+        }
+    }
+    
+    // A decoded preview and what is needed to go back to the source file
+    static final class LoadedImage {
+        final String source; // for logs, see describe()
+        byte[] encoded; // whole file contents, returned to the pool by release()
+        final int encodedLength;
+        final int sourceWidth; // as stored in the file, before EXIF orientation
+        final int sourceHeight;
+        final int orientation;
+        final DecodePlan plan; // how the preview was decoded
+        final Bitmap preview; // as stored, rotate by rotationDegrees() to make it upright
+        
+        LoadedImage(String source, byte[] encoded, int encodedLength, int sourceWidth, int sourceHeight,
+                    int orientation, DecodePlan plan, Bitmap preview) {
+            this.source = source;
+            this.encoded = encoded;
+            this.encodedLength = encodedLength;
+            this.sourceWidth = sourceWidth;
+            this.sourceHeight = sourceHeight;
+            this.orientation = orientation;
+            this.plan = plan;
+            this.preview = preview;
+        }
+        
+        // Clockwise rotation that makes the stored pixels upright
+        int rotationDegrees() {
+            switch (orientation) {
+                case ExifInterface.ORIENTATION_ROTATE_90:
+                    return 90;
+                case ExifInterface.ORIENTATION_ROTATE_180:
+                    return 180;
+                case ExifInterface.ORIENTATION_ROTATE_270:
+                    return 270;
+                default:
+                    return 0;
+            }
+        }
+    }
+    
+    // Loads a filesystem path (with or without file://), a content:// URI or a
+    // base64 data: URI. Each kind is read into one buffer its own way; decoding,
+    // orientation and sampling are shared.
+    LoadedImage load(String source) {
+        Encoded encoded = null;
+        try {
+            long start = PipelineMetrics.begin(PipelineMetrics.READ);
+            try {
+                if (source.startsWith(CONTENT_SCHEME)) {
+                    encoded = readContent(source);
+                } else if (source.startsWith(DATA_SCHEME)) {
+                    encoded = readDataUri(source);
+                } else {
+                    encoded = readFile(source);
+                }
+            } finally {
+                metrics.end(PipelineMetrics.READ, start);
+            }
+            if (encoded == null) {
+                return null;
+            }
+            
+            LoadedImage image = decode(describe(source), encoded);
+            if (image == null) {
+                releaseBuffer(encoded.data);
+            }
+            return image;
+            
+        } catch (OutOfMemoryError e) {
+            Log.e(TAG, "Out of memory loading bitmap: " + describe(source), e);
+            if (encoded != null) {
+                releaseBuffer(encoded.data);
+            }
+            System.gc(); // Suggest garbage collection
+            return null;
+        } catch (Exception e) {
+            Log.e(TAG, "Error loading bitmap", e);
+            if (encoded != null) {
+                releaseBuffer(encoded.data);
+            }
+            return null;
+        }
+    }
+    
+    // Short form of a source for logs and results; data URIs are not echoed back
+    static String describe(String source) {
+        if (source.startsWith(DATA_SCHEME)) {
+            int comma = source.indexOf(',');
+            return source.substring(0, comma > 0 ? comma : Math.min(source.length(), 32))
+                + ",<" + source.length() + " chars>";
+        }
+        return source;
+    }
+    
+    private LoadedImage decode(String source, Encoded encoded) {
+        byte[] data = encoded.data;
+        int length = encoded.length;
+        
+        // First, get image dimensions without loading full bitmap
+        BitmapFactory.Options bounds = new BitmapFactory.Options();
+        bounds.inJustDecodeBounds = true;
+        DecodePlan plan;
+        Bitmap bitmap;
+        long start = PipelineMetrics.begin(PipelineMetrics.DECODE);
+        try {
+            BitmapFactory.decodeByteArray(data, 0, length, bounds);
+            
+            // Detection only needs a small preview, decoded straight to its final size
+            plan = DecodePlan.forLongEdge(bounds.outWidth, bounds.outHeight, DETECTION_SIZE);
+            
+            BitmapFactory.Options options = new BitmapFactory.Options();
+            options.inPreferredConfig = Bitmap.Config.RGB_565; // Use less memory
+            options.inMutable = true;
+            plan.applyTo(options);
+            options.inBitmap = acquireBitmap(plan.width, plan.height);
+            
+            try {
+                bitmap = BitmapFactory.decodeByteArray(data, 0, length, options);
+            } catch (IllegalArgumentException e) {
+                // The pooled bitmap was too small after the decoder's rounding
+                releaseBitmap(options.inBitmap);
+                options.inBitmap = null;
+                bitmap = BitmapFactory.decodeByteArray(data, 0, length, options);
+            }
+            if (bitmap == null) {
+                releaseBitmap(options.inBitmap);
+            }
+        } finally {
+            metrics.end(PipelineMetrics.DECODE, start);
+        }
+        
+        if (bitmap == null) {
+            Log.e(TAG, "Failed to decode bitmap from: " + source);
+            return null;
+        }
+        
+        if (DEBUG) Log.d(TAG, "Decode plan " + plan + ", got " + bitmap.getWidth() + "x" + bitmap.getHeight());
+        
+        // Orientation is only recorded; nothing gets rotated
+        start = PipelineMetrics.begin(PipelineMetrics.EXIF);
+        int orientation = readOrientation(data, length); // doesn't throw
+        metrics.end(PipelineMetrics.EXIF, start);
+        return new LoadedImage(source, data, length, bounds.outWidth, bounds.outHeight, orientation, plan, bitmap);
+    }
+    
+    // The only filesystem access for a path source
+    private Encoded readFile(String path) throws IOException {
+        String filePath = path.startsWith(FILE_SCHEME) ? path.substring(FILE_SCHEME.length()) : path;
+        File file = new File(filePath);
+        
+        if (!file.exists()) {
+            Log.e(TAG, "File does not exist: " + filePath);
+            return null;
+        }
+        
+        try (FileInputStream in = new FileInputStream(file)) {
+            FileChannel channel = in.getChannel();
+            long size = channel.size();
+            if (size > MAX_ENCODED_BYTES) {
+                throw new IOException("Image too large: " + size + " bytes");
+            }
+            int length = (int) size;
+            byte[] buffer = acquireBuffer(length);
+            try {
+                readFully(channel, buffer, length);
+            } catch (IOException e) {
+                releaseBuffer(buffer);
+                throw e;
+            }
+            return new Encoded(buffer, length);
+        }
+    }
+    
+    // Streams a content:// URI (camera, gallery, other apps) without a temporary file
+    private Encoded readContent(String uri) throws IOException {
+        if (contentResolver == null) {
+            throw new IOException("content:// sources need a ContentResolver");
+        }
+        try (InputStream in = contentResolver.openInputStream(Uri.parse(uri))) {
+            if (in == null) {
+                Log.e(TAG, "Content provider returned no stream for: " + uri);
+                return null;
+            }
+            
+            // available() is only the provider's word; never size past the cap on it
+            byte[] buffer = acquireBuffer(Math.min(Math.max(in.available(), BUFFER_GRANULE), MAX_ENCODED_BYTES + 1));
+            int length = 0;
+            try {
+                int read;
+                while ((read = in.read(buffer, length, buffer.length - length)) >= 0) {
+                    length += read;
+                    if (length == buffer.length) {
+                        if (length >= MAX_ENCODED_BYTES) {
+                            throw new IOException("Image too large: over " + MAX_ENCODED_BYTES + " bytes");
+                        }
+                        byte[] larger = acquireBuffer((int) Math.min(2L * length, MAX_ENCODED_BYTES));
+                        System.arraycopy(buffer, 0, larger, 0, length);
+                        releaseBuffer(buffer);
+                        buffer = larger;
+                    }
+                }
+            } catch (IOException e) {
+                releaseBuffer(buffer);
+                throw e;
+            }
+            return new Encoded(buffer, length);
+        }
+    }
+    
+    // The isShareable flag is ignored since API 31, where the overload without it
+    // replaces this one
+    @SuppressWarnings("deprecation")
+    private static BitmapRegionDecoder newRegionDecoder(byte[] data, int length) throws IOException {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.S) {
+            return BitmapRegionDecoder.newInstance(data, 0, length);
+        }
+        return BitmapRegionDecoder.newInstance(data, 0, length, false);
+    }
+    
+    // Decodes an inline "data:[<mime>];base64,<payload>" capture held only in memory
+    private static Encoded readDataUri(String uri) throws IOException {
+        int comma = uri.indexOf(',');
+        if (comma < 0 || !uri.substring(0, comma).endsWith(";base64")) {
+            throw new IOException("Only base64 data URIs are supported");
+        }
+        // Every 4 payload characters decode to at most 3 bytes; refuse before
+        // the decoder allocates anything
+        long maxDecoded = (uri.length() - comma - 1L) / 4 * 3;
+        if (maxDecoded > MAX_ENCODED_BYTES) {
+            throw new IOException("Image too large: up to " + maxDecoded + " bytes");
+        }
+        byte[] data = Base64.decode(uri.substring(comma + 1), Base64.DEFAULT);
+        return new Encoded(data, data.length);
+    }
+    
+    // Hands the preview and the encoded buffer back to their pools; a second
+    // call for the same image does nothing
+    void release(LoadedImage image) {
+        byte[] encoded = image.encoded;
+        if (encoded == null) {
+            return;
+        }
+        image.encoded = null;
+        releaseBuffer(encoded);
+        releaseBitmap(image.preview);
+    }
+    
+    // Decodes the padded face rectangle (in preview coordinates made upright by
+    // rotationDegrees, as reported by the detector) from the original file, or
+    // returns null if the region cannot be decoded. The result is in stored
+    // orientation like the preview; hand it back with releaseBitmap().
+    Bitmap decodeFaceRegion(LoadedImage image, int rotationDegrees, Rect previewBounds) {
+        BitmapRegionDecoder decoder = null;
+        try {
+            if (image.encoded == null) {
+                return null; // already released
+            }
+            
+            // Preview coordinates -> upright full-resolution coordinates
+            boolean transposed = rotationDegrees == 90 || rotationDegrees == 270;
+            int uprightWidth = transposed ? image.sourceHeight : image.sourceWidth;
+            int uprightHeight = transposed ? image.sourceWidth : image.sourceHeight;
+            int previewWidth = transposed ? image.preview.getHeight() : image.preview.getWidth();
+            int previewHeight = transposed ? image.preview.getWidth() : image.preview.getHeight();
+            float scaleX = (float) uprightWidth / previewWidth;
+            float scaleY = (float) uprightHeight / previewHeight;
+            
+            int left = (int) (previewBounds.left * scaleX);
+            int top = (int) (previewBounds.top * scaleY);
+            int right = (int) Math.ceil(previewBounds.right * scaleX);
+            int bottom = (int) Math.ceil(previewBounds.bottom * scaleY);
+            
+            // Add 30% padding around face
+            int padding = (int) (Math.max(right - left, bottom - top) * FACE_PADDING);
+            left = Math.max(0, left - padding);
+            top = Math.max(0, top - padding);
+            right = Math.min(uprightWidth, right + padding);
+            bottom = Math.min(uprightHeight, bottom + padding);
+            
+            if (right <= left || bottom <= top) {
+                return null;
+            }
+            
+            Rect region = toSourceRect(rotationDegrees, image.sourceWidth, image.sourceHeight, left, top, right, bottom);
+            
+            BitmapFactory.Options options = new BitmapFactory.Options();
+            options.inPreferredConfig = Bitmap.Config.RGB_565;
+            options.inMutable = true;
+            options.inSampleSize = regionSampleSize(region.width(), region.height());
+            // The region decoder draws into inBitmap without resizing it, so the
+            // pooled bitmap is first reconfigured to the sampled size (rounded
+            // down, as the decoder does)
+            options.inBitmap = acquireBitmap(Math.max(1, region.width() / options.inSampleSize),
+                Math.max(1, region.height() / options.inSampleSize));
+            
+            decoder = newRegionDecoder(image.encoded, image.encodedLength);
+            Bitmap bitmap;
+            try {
+                bitmap = decoder.decodeRegion(region, options);
+            } catch (IllegalArgumentException e) {
+                releaseBitmap(options.inBitmap);
+                options.inBitmap = null;
+                bitmap = decoder.decodeRegion(region, options);
+            }
+            if (bitmap == null) {
+                releaseBitmap(options.inBitmap);
+                return null;
+            }
+            
+            if (DEBUG) Log.d(TAG, "Decoded face region " + region.width() + "x" + region.height()
+                + " at 1/" + options.inSampleSize + " -> " + bitmap.getWidth() + "x" + bitmap.getHeight());
+            
+            return bitmap;
+            
+        } catch (OutOfMemoryError | IOException | IllegalArgumentException e) {
+            Log.w(TAG, "Failed to decode face region from " + image.source, e);
+            return null;
+        } finally {
+            if (decoder != null) {
+                decoder.recycle();
+            }
+        }
+    }
+    
+    // Pads an upright face box (as reported by the detector) by FACE_PADDING, clips
+    // it to the image and maps it into the coordinates of the stored width x height
+    // pixels; null if nothing is left
+    static Rect paddedSourceRect(Rect bounds, int rotationDegrees, int w, int h) {
+        boolean transposed = rotationDegrees == 90 || rotationDegrees == 270;
+        int padding = (int) (Math.max(bounds.width(), bounds.height()) * FACE_PADDING);
+        
+        int left = Math.max(0, bounds.left - padding);
+        int top = Math.max(0, bounds.top - padding);
+        int right = Math.min(transposed ? h : w, bounds.right + padding);
+        int bottom = Math.min(transposed ? w : h, bounds.bottom + padding);
+        
+        if (right <= left || bottom <= top) {
+            return null;
+        }
+        return toSourceRect(rotationDegrees, w, h, left, top, right, bottom);
+    }
+    
+    // Maps an upright rectangle back through a clockwise rotation into the
+    // coordinates of a stored width x height image
+    static Rect toSourceRect(int rotationDegrees, int w, int h, int left, int top, int right, int bottom) {
+        switch (rotationDegrees) {
+            case 90:
+                return new Rect(top, h - right, bottom, h - left);
+            case 180:
+                return new Rect(w - right, h - bottom, w - left, h - top);
+            case 270:
+                return new Rect(w - bottom, left, w - top, right);
+            default:
+                return new Rect(left, top, right, bottom);
+        }
+    }
+    
+    // Largest power of two that keeps the shorter side of the region at or above FACE_REGION_SIZE
+    private static int regionSampleSize(int width, int height) {
+        int sampleSize = 1;
+        int shortSide = Math.min(width, height);
+        while (shortSide / (sampleSize * 2) >= FACE_REGION_SIZE) {
+            sampleSize *= 2;
+        }
+        return sampleSize;
+    }
+    
+    private static void readFully(FileChannel channel, byte[] buffer, int length) throws IOException {
+        ByteBuffer target = ByteBuffer.wrap(buffer, 0, length);
+        while (target.hasRemaining()) {
+            if (channel.read(target) < 0) {
+                throw new EOFException("File truncated while reading");
+            }
+        }
+    }
+    
+    private byte[] acquireBuffer(int size) {
+        synchronized (bufferPool) {
+            for (byte[] buffer : bufferPool) {
+                if (buffer.length >= size) {
+                    bufferPool.remove(buffer);
+                    return buffer;
+                }
+            }
+        }
+        // Round up so slightly larger files can reuse the buffer later
+        return new byte[(size + BUFFER_GRANULE - 1) / BUFFER_GRANULE * BUFFER_GRANULE];
+    }
+    
+    private void releaseBuffer(byte[] buffer) {
+        if (buffer == null || buffer.length > MAX_POOLED_BUFFER_BYTES) {
+            return;
+        }
+        synchronized (bufferPool) {
+            if (bufferPool.size() >= MAX_POOLED_BUFFERS) {
+                bufferPool.pollFirst(); // drop the oldest
+            }
+            bufferPool.addLast(buffer);
+        }
+    }
+    
+    // Smallest pooled bitmap that can hold width x height RGB_565 pixels,
+    // reconfigured to that size, or null to let the decoder allocate one
+    private Bitmap acquireBitmap(int width, int height) {
+        long bytes = 2L * width * height;
+        Bitmap best = null;
+        synchronized (bitmapPool) {
+            for (Bitmap bitmap : bitmapPool) {
+                int size = bitmap.getAllocationByteCount();
+                if (size >= bytes && (best == null || size < best.getAllocationByteCount())) {
+                    best = bitmap;
+                }
+            }
+            if (best == null) {
+                return null;
+            }
+            bitmapPool.remove(best);
+        }
+        best.reconfigure(width, height, Bitmap.Config.RGB_565);
+        return best;
+    }
+    
+    // Takes back a preview or face region bitmap for later decodes; anything
+    // that cannot be decoded into again is recycled instead
+    void releaseBitmap(Bitmap bitmap) {
+        if (bitmap == null || bitmap.isRecycled()) {
+            return;
+        }
+        if (!bitmap.isMutable() || bitmap.getConfig() != Bitmap.Config.RGB_565
+                || bitmap.getAllocationByteCount() > MAX_POOLED_BITMAP_BYTES) {
+            bitmap.recycle();
+            return;
+        }
+        Bitmap evicted = null;
+        synchronized (bitmapPool) {
+            if (bitmapPool.size() >= MAX_POOLED_BITMAPS) {
+                evicted = bitmapPool.pollFirst(); // drop the oldest
+            }
+            bitmapPool.addLast(bitmap);
+        }
+        if (evicted != null) {
+            evicted.recycle();
+        }
+    }
+    
+    // Frees everything pooled; loads after this simply allocate again
+    void clear() {
+        synchronized (bufferPool) {
+            bufferPool.clear();
+        }
+        synchronized (bitmapPool) {
+            for (Bitmap bitmap : bitmapPool) {
+                bitmap.recycle();
+            }
+            bitmapPool.clear();
+        }
+    }
+    
+    private static int readOrientation(byte[] encoded, int length) {
+        try {
+            ExifInterface exif = new ExifInterface(new ByteArrayInputStream(encoded, 0, length));
+            return exif.getAttributeInt(ExifInterface.TAG_ORIENTATION, ExifInterface.ORIENTATION_NORMAL);
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to read EXIF data", e);
+            return ExifInterface.ORIENTATION_NORMAL;
+        }
+    }
+}
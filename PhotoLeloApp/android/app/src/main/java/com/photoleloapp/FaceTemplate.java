@@ -0,0 +1,18 @@
+package com.photoleloapp;
+
+// Features extracted once from a reference image, so it can be scored against
+// many candidates without being decoded or detected again.
+final class FaceTemplate {
+    
+    final float[] faceFeatures; // null when no face was detected
+    final float[] fullImageFeatures; // used by the fallback comparison
+    
+    FaceTemplate(float[] faceFeatures, float[] fullImageFeatures) {
+        this.faceFeatures = faceFeatures;
+        this.fullImageFeatures = fullImageFeatures;
+    }
+    
+    boolean hasFace() {
+        return faceFeatures != null;
+    }
+}
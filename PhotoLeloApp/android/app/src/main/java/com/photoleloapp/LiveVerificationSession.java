@@ -0,0 +1,199 @@
+package com.photoleloapp;
+
+import android.graphics.Rect;
+import android.util.Log;
+
+import com.google.mlkit.vision.common.InputImage;
+import com.google.mlkit.vision.face.Face;
+import com.google.mlkit.vision.face.FaceDetector;
+
+import com.photoleloapp.facecore.FaceScores;
+import com.photoleloapp.facecore.FaceTrackCache;
+import com.photoleloapp.facecore.FrameMailbox;
+import com.photoleloapp.facecore.MatchStabilizer;
+import com.photoleloapp.facecore.PixelRaster;
+import com.photoleloapp.facecore.YuvFrame;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Continuous verification of camera frames against one enrolled template.
+// Frames go through a FrameMailbox, so at most one is being detected and one is
+// waiting; anything older is dropped. Features are read straight from the YUV
+// planes of the padded face box, and the listener hears about a match once the
+// MatchStabilizer has seen a stable score over its window.
+//
+// The detector is expected to have tracking enabled: a face that keeps its
+// tracking ID and stays put since its last extraction (see FaceTrackCache) is
+// skipped, as it would give the same score again, and a new tracking ID
+// restarts the streak. Every score the stabilizer sees is therefore from a
+// fresh, unsmoothed extraction, so its K frames are K separate looks.
+final class LiveVerificationSession {
+    
+    private static final String TAG = "FaceComparison";
+    private static final boolean DEBUG = BuildConfig.DEBUG;
+    private static final String DETECT_SECTION = PipelineTrace.sectionName("liveDetect");
+    
+    interface Listener {
+        void onMatch(LiveVerificationSession session, double confidence);
+    }
+    
+    final String userId;
+    private final float[] reference;
+    private final FaceDetector detector;
+    private final Executor executor;
+    private final MatchStabilizer stabilizer; // only touched by the single in-flight frame
+    private final Listener listener;
+    private final PipelineMetrics metrics;
+    private final FrameMailbox<YuvFrame> mailbox = new FrameMailbox<>();
+    private final FaceTrackCache tracks = new FaceTrackCache(); // same single-frame confinement
+    private Integer lastTrackingId;
+    
+    private final AtomicLong processed = new AtomicLong();
+    private final AtomicLong reused = new AtomicLong();
+    private final AtomicLong matches = new AtomicLong();
+    private volatile boolean closed;
+    
+    LiveVerificationSession(String userId, float[] reference, FaceDetector detector, Executor executor,
+                            MatchStabilizer stabilizer, Listener listener, PipelineMetrics metrics) {
+        this.userId = userId;
+        this.reference = reference;
+        this.detector = detector;
+        this.executor = executor;
+        this.stabilizer = stabilizer;
+        this.listener = listener;
+        this.metrics = metrics;
+    }
+    
+    // Hands a frame to the session; the session owns the buffer from here on
+    void submit(YuvFrame frame) {
+        if (closed || !mailbox.offer(frame)) {
+            return;
+        }
+        try {
+            executor.execute(this::processNext);
+        } catch (RejectedExecutionException e) {
+            mailbox.clear();
+        }
+    }
+    
+    void close() {
+        closed = true;
+        mailbox.clear();
+    }
+    
+    long processedCount() {
+        return processed.get();
+    }
+    
+    long droppedCount() {
+        return mailbox.droppedCount();
+    }
+    
+    // Frames scored with a tracked face's cached vector instead of a new extraction
+    long reusedCount() {
+        return reused.get();
+    }
+    
+    long matchCount() {
+        return matches.get();
+    }
+    
+    private void processNext() {
+        YuvFrame frame = mailbox.next();
+        if (frame == null) {
+            return;
+        }
+        if (closed) {
+            mailbox.clear();
+            return;
+        }
+        
+        try {
+            InputImage image = InputImage.fromByteBuffer(ByteBuffer.wrap(frame.nv21),
+                frame.width, frame.height, frame.rotationDegrees, InputImage.IMAGE_FORMAT_NV21);
+            
+            // Pick up the latest waiting frame once this one is done
+            int cookie = PipelineTrace.beginAsync(DETECT_SECTION);
+            detector.process(image).addOnCompleteListener(executor, task -> {
+                PipelineTrace.endAsync(DETECT_SECTION, cookie);
+                try {
+                    if (task.isSuccessful()) {
+                        onFaces(frame, task.getResult());
+                    } else {
+                        Log.w(TAG, "Live frame detection failed", task.getException());
+                    }
+                } catch (RuntimeException e) {
+                    Log.e(TAG, "Error scoring live frame", e);
+                } finally {
+                    processNext();
+                }
+            });
+        } catch (RuntimeException e) {
+            Log.e(TAG, "Error submitting live frame", e);
+            mailbox.clear();
+        }
+    }
+    
+    private void onFaces(YuvFrame frame, List<Face> faces) {
+        if (closed) {
+            return;
+        }
+        processed.incrementAndGet();
+        
+        if (faces.isEmpty()) {
+            stabilizer.reset();
+            return;
+        }
+        Face face = FaceComparisonModule.getLargestFace(faces);
+        Rect box = face.getBoundingBox();
+        Integer trackingId = face.getTrackingId();
+        
+        // A different tracked face must build its own streak
+        if (trackingId != null && lastTrackingId != null && !trackingId.equals(lastTrackingId)) {
+            stabilizer.reset();
+        }
+        lastTrackingId = trackingId;
+        
+        if (trackingId != null && tracks.reuse(trackingId, box.left, box.top, box.right, box.bottom)) {
+            reused.incrementAndGet();
+            return;
+        }
+        ScratchArena arena = ScratchArena.forCurrentThread();
+        Rect region = FaceImageLoader.paddedSourceRect(box, frame.rotationDegrees, frame.width, frame.height);
+        if (region == null) {
+            stabilizer.reset();
+            return;
+        }
+        PixelRaster raster;
+        long start = PipelineMetrics.begin(PipelineMetrics.CROP);
+        try {
+            raster = frame.toRaster(region.left, region.top, region.width(), region.height(), arena.raster);
+        } finally {
+            metrics.end(PipelineMetrics.CROP, start);
+        }
+        start = PipelineMetrics.begin(PipelineMetrics.EXTRACT);
+        try {
+            arena.extractor.extract(raster, arena.features1);
+        } finally {
+            metrics.end(PipelineMetrics.EXTRACT, start);
+        }
+        if (trackingId != null) {
+            tracks.update(trackingId, box.left, box.top, box.right, box.bottom);
+        }
+        
+        start = PipelineMetrics.begin(PipelineMetrics.DISTANCE);
+        double distance = FaceScores.euclideanDistance(reference, arena.features1);
+        metrics.end(PipelineMetrics.DISTANCE, start);
+        double confidence = FaceScores.faceConfidence(distance);
+        if (DEBUG) Log.d(TAG, "Live frame confidence for " + userId + ": " + confidence + "%");
+        
+        if (stabilizer.add(confidence)) {
+            matches.incrementAndGet();
+            listener.onMatch(this, stabilizer.mean());
+        }
+    }
+}
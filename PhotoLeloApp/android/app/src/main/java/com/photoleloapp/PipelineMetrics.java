@@ -0,0 +1,185 @@
+package com.photoleloapp;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+// Lock-free latency histograms per pipeline stage plus event counters, cheap
+// enough to stay on in release builds. Each stage has fixed exponential buckets
+// (x1.5 from 100us up to ~30s), so percentiles are read off bucket bounds and
+// are accurate to one bucket. Resetting races with concurrent recording, which
+// can only lose or keep a sample recorded at that instant. begin()/end() also
+// bracket the stage in a PipelineTrace section when tracing is on.
+final class PipelineMetrics {
+    
+    static final int READ = 0;
+    static final int DECODE = 1;
+    static final int EXIF = 2;
+    static final int DETECT = 3; // first (FAST) detection pass
+    static final int DETECT_RETRY = 4; // each escalated pass
+    static final int CROP = 5; // face pixels into the raster
+    static final int EXTRACT = 6;
+    static final int DISTANCE = 7;
+    static final String[] STAGE_NAMES = {
+        "read", "decode", "exif", "detectFast", "detectEscalated", "crop", "extract", "distance"
+    };
+    
+    static final int COMPARISONS = 0;
+    static final int FALLBACK_COMPARISONS = 1; // no face on one side, full-image scoring
+    static final int PREVIEW_CROPS = 2; // face region decode failed, preview used instead
+    static final int DETECTION_RETRIES = 3; // images that went past the FAST pass
+    static final int RETRY_RESCUES = 4; // ...and got a face from a later pass
+    static final String[] COUNTER_NAMES = {
+        "comparisons", "fallbackComparisons", "previewCrops", "detectionRetries", "retryRescues"
+    };
+    
+    private static final String[] SECTION_NAMES = new String[STAGE_NAMES.length];
+    
+    static {
+        for (int i = 0; i < STAGE_NAMES.length; i++) {
+            SECTION_NAMES[i] = PipelineTrace.sectionName(STAGE_NAMES[i]);
+        }
+    }
+    
+    static final int BUCKETS = 32;
+    private static final long FIRST_BOUND_NANOS = 100_000;
+    private static final long[] BOUNDS = new long[BUCKETS]; // inclusive upper bounds; the last is open
+    
+    static {
+        double bound = FIRST_BOUND_NANOS;
+        for (int i = 0; i < BUCKETS; i++) {
+            BOUNDS[i] = (long) bound;
+            bound *= 1.5;
+        }
+        BOUNDS[BUCKETS - 1] = Long.MAX_VALUE;
+    }
+    
+    private final AtomicLongArray buckets = new AtomicLongArray(STAGE_NAMES.length * BUCKETS);
+    private final LongAdder[] totals = new LongAdder[STAGE_NAMES.length];
+    private final AtomicLong[] maxima = new AtomicLong[STAGE_NAMES.length];
+    private final LongAdder[] counters = new LongAdder[COUNTER_NAMES.length];
+    private volatile long resetAtNanos = System.nanoTime();
+    
+    PipelineMetrics() {
+        for (int i = 0; i < totals.length; i++) {
+            totals[i] = new LongAdder();
+            maxima[i] = new AtomicLong();
+        }
+        for (int i = 0; i < counters.length; i++) {
+            counters[i] = new LongAdder();
+        }
+    }
+    
+    static long start() {
+        return System.nanoTime();
+    }
+    
+    // Opens the stage's trace section and returns its start time; pair with
+    // end() on the same thread, in a finally block if the stage can throw
+    static long begin(int stage) {
+        PipelineTrace.begin(SECTION_NAMES[stage]);
+        return System.nanoTime();
+    }
+    
+    void end(int stage, long startNanos) {
+        record(stage, startNanos);
+        PipelineTrace.end();
+    }
+    
+    static String sectionName(int stage) {
+        return SECTION_NAMES[stage];
+    }
+    
+    // Records the time since startNanos (from start()) against the stage
+    void record(int stage, long startNanos) {
+        recordNanos(stage, System.nanoTime() - startNanos);
+    }
+    
+    void recordNanos(int stage, long nanos) {
+        if (nanos < 0) {
+            nanos = 0;
+        }
+        buckets.incrementAndGet(stage * BUCKETS + bucketOf(nanos));
+        totals[stage].add(nanos);
+        AtomicLong max = maxima[stage];
+        long current;
+        while (nanos > (current = max.get()) && !max.compareAndSet(current, nanos)) {
+            // retry
+        }
+    }
+    
+    void increment(int counter) {
+        counters[counter].increment();
+    }
+    
+    long count(int stage) {
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            count += buckets.get(stage * BUCKETS + i);
+        }
+        return count;
+    }
+    
+    double meanMillis(int stage) {
+        long count = count(stage);
+        return count > 0 ? totals[stage].sum() / 1e6 / count : 0;
+    }
+    
+    double maxMillis(int stage) {
+        return maxima[stage].get() / 1e6;
+    }
+    
+    // Upper bound of the bucket holding the given quantile (0..1), capped at the
+    // observed maximum; 0 when the stage has no samples
+    double percentileMillis(int stage, double quantile) {
+        long count = count(stage);
+        if (count == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(quantile * count));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += buckets.get(stage * BUCKETS + i);
+            if (seen >= rank) {
+                return Math.min(BOUNDS[i], maxima[stage].get()) / 1e6;
+            }
+        }
+        return maxMillis(stage);
+    }
+    
+    long counter(int counter) {
+        return counters[counter].sum();
+    }
+    
+    double sinceResetMillis() {
+        return (System.nanoTime() - resetAtNanos) / 1e6;
+    }
+    
+    void reset() {
+        for (int i = 0; i < buckets.length(); i++) {
+            buckets.set(i, 0);
+        }
+        for (int i = 0; i < totals.length; i++) {
+            totals[i].reset();
+            maxima[i].set(0);
+        }
+        for (LongAdder counter : counters) {
+            counter.reset();
+        }
+        resetAtNanos = System.nanoTime();
+    }
+    
+    static int bucketOf(long nanos) {
+        int low = 0;
+        int high = BUCKETS - 1;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (nanos <= BOUNDS[mid]) {
+                high = mid;
+            } else {
+                low = mid + 1;
+            }
+        }
+        return low;
+    }
+}
@@ -0,0 +1,87 @@
+package com.photoleloapp;
+
+import android.os.Build;
+import android.os.Trace;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+// android.os.Trace sections for the pipeline, so a Perfetto or systrace capture
+// shows which stage and which thread a slow verification spent its time in.
+// Off by default and switched at runtime; while off, begin() is one volatile
+// read and end() one thread-local read. Synchronous stages get a section on
+// the calling thread; detector calls, which complete on another thread, get an
+// async slice from submit to callback (API 29+, since older releases have no
+// public async API).
+final class PipelineTrace {
+    
+    private static final String PREFIX = "FaceComparison.";
+    
+    private static volatile boolean enabled;
+    private static final AtomicInteger nextCookie = new AtomicInteger(1);
+    
+    // Sections this thread opened while tracing was on. end() goes by this
+    // rather than the flag, so switching tracing on mid-stage does not end a
+    // section nobody began, and switching it off does not leave one open.
+    private static final ThreadLocal<int[]> depth = new ThreadLocal<int[]>() {
+        @Override
+        protected int[] initialValue() {
+            return new int[1];
+        }
+    };
+    
+    private PipelineTrace() {}
+    
+    // Takes effect at the next begin(); sections already open are still ended
+    static void setEnabled(boolean on) {
+        enabled = on;
+    }
+    
+    static boolean isEnabled() {
+        return enabled;
+    }
+    
+    // Full section name for a stage; callers keep the result so nothing is
+    // concatenated per call
+    static String sectionName(String stage) {
+        return PREFIX + stage;
+    }
+    
+    static void begin(String section) {
+        if (!enabled) {
+            return;
+        }
+        Trace.beginSection(section);
+        depth.get()[0]++;
+    }
+    
+    // Ends the innermost section begun on this thread. Must be called from the
+    // same thread as begin(), normally from a finally block.
+    static void end() {
+        int[] open = depth.get();
+        if (open[0] > 0) {
+            open[0]--;
+            Trace.endSection();
+        }
+    }
+    
+    // Starts an async slice and returns its cookie for endAsync(), or 0 when
+    // nothing was started
+    static int beginAsync(String section) {
+        if (!enabled || Build.VERSION.SDK_INT < Build.VERSION_CODES.Q) {
+            return 0;
+        }
+        int cookie = nextCookie.getAndIncrement();
+        if (cookie == 0) {
+            cookie = nextCookie.getAndIncrement(); // wrapped around
+        }
+        Trace.beginAsyncSection(section, cookie);
+        return cookie;
+    }
+    
+    // Ends an async slice from any thread; a no-op for cookie 0
+    static void endAsync(String section, int cookie) {
+        if (cookie != 0 && Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+            Trace.endAsyncSection(section, cookie);
+        }
+    }
+}
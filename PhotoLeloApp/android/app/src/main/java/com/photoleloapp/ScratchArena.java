@@ -0,0 +1,30 @@
+package com.photoleloapp;
+
+import com.photoleloapp.facecore.FeatureLayout;
+import com.photoleloapp.facecore.FusedFeatureExtractor;
+import com.photoleloapp.facecore.PixelRaster;
+
+// Per-worker scratch memory reused across comparisons: the pixel raster, the
+// fused extractor's accumulators and two feature vectors. Buffers belong to the
+// calling thread and must not be kept past the current comparison.
+final class ScratchArena {
+    
+    private static final ThreadLocal<ScratchArena> ARENA = new ThreadLocal<ScratchArena>() {
+        @Override
+        protected ScratchArena initialValue() {
+            return new ScratchArena();
+        }
+    };
+    
+    final PixelRaster raster = new PixelRaster();
+    final FusedFeatureExtractor extractor = new FusedFeatureExtractor();
+    final float[] features1 = FeatureLayout.newVector();
+    final float[] features2 = FeatureLayout.newVector();
+    
+    private ScratchArena() {
+    }
+    
+    static ScratchArena forCurrentThread() {
+        return ARENA.get();
+    }
+}
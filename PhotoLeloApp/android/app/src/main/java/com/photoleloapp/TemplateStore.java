@@ -0,0 +1,155 @@
+package com.photoleloapp;
+
+import android.util.Log;
+
+import com.photoleloapp.facecore.FeatureLayout;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Persists enrolled reference templates so the saved photo is processed once,
+// survives app restarts, and is never decoded again on verification.
+// File access is serialized on the store, so two enrolls of the same user
+// cannot interleave their writes; loads hit the in-memory copy first.
+final class TemplateStore {
+    
+    private static final String TAG = "FaceComparison";
+    private static final int MAGIC = 0x46544D50; // "FTMP"
+    private static final int FORMAT_VERSION = 2;
+    
+    private final File directory;
+    private final Map<String, FaceTemplate> memory = new ConcurrentHashMap<>();
+    
+    TemplateStore(File directory) {
+        this.directory = directory;
+    }
+    
+    FaceTemplate load(String userId) throws IOException {
+        FaceTemplate cached = memory.get(userId);
+        if (cached != null) {
+            return cached;
+        }
+        synchronized (this) {
+            return read(userId);
+        }
+    }
+    
+    // Reads the stored template, or returns null when there is none or it cannot
+    // be used; unusable files are deleted so the user is simply not enrolled
+    private FaceTemplate read(String userId) throws IOException {
+        File file = fileFor(userId);
+        if (!file.exists()) {
+            return null;
+        }
+        
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION
+                    || in.readInt() != FeatureLayout.VERSION || in.readInt() != FeatureLayout.DIMENSION) {
+                // Written by an incompatible build; the user has to enroll again
+                return discard(userId, file, "incompatible");
+            }
+            boolean hasFace = in.readBoolean();
+            float[] faceFeatures = hasFace ? readVector(in) : null;
+            float[] fullImageFeatures = readVector(in);
+            if ((hasFace && faceFeatures == null) || fullImageFeatures == null) {
+                return discard(userId, file, "mismatched");
+            }
+            
+            FaceTemplate template = new FaceTemplate(faceFeatures, fullImageFeatures);
+            memory.put(userId, template);
+            return template;
+        } catch (FileNotFoundException e) {
+            return null;
+        } catch (EOFException e) {
+            // Truncated, e.g. by a crash before the write reached the disk
+            return discard(userId, file, "truncated");
+        }
+    }
+    
+    private static FaceTemplate discard(String userId, File file, String reason) {
+        Log.w(TAG, "Discarding " + reason + " face template for " + userId);
+        if (!file.delete()) {
+            Log.w(TAG, "Cannot delete " + file);
+        }
+        return null;
+    }
+    
+    synchronized void save(String userId, FaceTemplate template) throws IOException {
+        if (!directory.exists() && !directory.mkdirs()) {
+            throw new IOException("Cannot create " + directory);
+        }
+        
+        // Write to a temporary file and sync it before the rename, so a crash or
+        // power loss never leaves a torn template under the real name
+        File file = fileFor(userId);
+        File temp = File.createTempFile(file.getName(), ".tmp", directory);
+        try (FileOutputStream stream = new FileOutputStream(temp);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream))) {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeInt(FeatureLayout.VERSION);
+            out.writeInt(FeatureLayout.DIMENSION);
+            out.writeBoolean(template.hasFace());
+            if (template.hasFace()) {
+                writeVector(out, template.faceFeatures);
+            }
+            writeVector(out, template.fullImageFeatures);
+            out.flush();
+            stream.getFD().sync();
+        } catch (IOException e) {
+            temp.delete();
+            throw e;
+        }
+        if (!temp.renameTo(file)) {
+            temp.delete();
+            throw new IOException("Cannot write " + file);
+        }
+        
+        memory.put(userId, template);
+    }
+    
+    synchronized boolean remove(String userId) {
+        memory.remove(userId);
+        return fileFor(userId).delete();
+    }
+    
+    private File fileFor(String userId) {
+        // Hex-encode the id so any user name maps to a unique, safe file name
+        StringBuilder name = new StringBuilder();
+        for (byte b : userId.getBytes(StandardCharsets.UTF_8)) {
+            name.append(String.format("%02x", b));
+        }
+        return new File(directory, name.append(".tpl").toString());
+    }
+    
+    // Null when the stored vector has another dimension than this build uses
+    private static float[] readVector(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length != FeatureLayout.DIMENSION) {
+            return null;
+        }
+        float[] vector = new float[length];
+        for (int i = 0; i < vector.length; i++) {
+            vector[i] = in.readFloat();
+        }
+        return vector;
+    }
+    
+    private static void writeVector(DataOutputStream out, float[] vector) throws IOException {
+        out.writeInt(vector.length);
+        for (float value : vector) {
+            out.writeFloat(value);
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package com.photoleloapp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class PipelineMetricsTest {
+    
+    private static final long MILLI = 1_000_000;
+    
+    @Test
+    public void percentilesAreBucketBoundsOfKnownDistribution() {
+        PipelineMetrics metrics = new PipelineMetrics();
+        // 1..1000 ms, one sample each
+        for (int ms = 1; ms <= 1000; ms++) {
+            metrics.recordNanos(PipelineMetrics.DECODE, ms * MILLI);
+        }
+        
+        assertEquals(1000, metrics.count(PipelineMetrics.DECODE));
+        assertEquals(500.5, metrics.meanMillis(PipelineMetrics.DECODE), 1e-9);
+        assertEquals(1000.0, metrics.maxMillis(PipelineMetrics.DECODE), 1e-9);
+        assertWithinOneBucket(500, metrics.percentileMillis(PipelineMetrics.DECODE, 0.5));
+        assertWithinOneBucket(900, metrics.percentileMillis(PipelineMetrics.DECODE, 0.9));
+        assertWithinOneBucket(990, metrics.percentileMillis(PipelineMetrics.DECODE, 0.99));
+        assertEquals(1000.0, metrics.percentileMillis(PipelineMetrics.DECODE, 1.0), 1e-9);
+        assertEquals(0, metrics.count(PipelineMetrics.READ));
+        assertEquals(0, metrics.percentileMillis(PipelineMetrics.READ, 0.5), 0);
+    }
+    
+    @Test
+    public void bucketsCoverEveryDuration() {
+        assertEquals(0, PipelineMetrics.bucketOf(0));
+        assertEquals(0, PipelineMetrics.bucketOf(100_000));
+        assertEquals(1, PipelineMetrics.bucketOf(100_001));
+        assertEquals(PipelineMetrics.BUCKETS - 1, PipelineMetrics.bucketOf(Long.MAX_VALUE));
+        for (long nanos = 1; nanos > 0 && nanos < Long.MAX_VALUE / 3; nanos *= 3) {
+            assertTrue(PipelineMetrics.bucketOf(nanos) <= PipelineMetrics.bucketOf(nanos * 3));
+        }
+    }
+    
+    @Test
+    public void concurrentWritersLoseNothing() throws InterruptedException {
+        final PipelineMetrics metrics = new PipelineMetrics();
+        final int threads = 8;
+        final int samples = 50_000;
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(threads);
+        
+        for (int t = 0; t < threads; t++) {
+            final long nanos = (t + 1) * MILLI;
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        for (int i = 0; i < samples; i++) {
+                            metrics.recordNanos(PipelineMetrics.EXTRACT, nanos);
+                            metrics.increment(PipelineMetrics.COMPARISONS);
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }).start();
+        }
+        start.countDown();
+        assertTrue(done.await(30, TimeUnit.SECONDS));
+        
+        assertEquals((long) threads * samples, metrics.count(PipelineMetrics.EXTRACT));
+        assertEquals((long) threads * samples, metrics.counter(PipelineMetrics.COMPARISONS));
+        assertEquals(4.5, metrics.meanMillis(PipelineMetrics.EXTRACT), 1e-9);
+        assertEquals(8.0, metrics.maxMillis(PipelineMetrics.EXTRACT), 1e-9);
+    }
+    
+    @Test
+    public void resetClearsEverything() {
+        PipelineMetrics metrics = new PipelineMetrics();
+        metrics.recordNanos(PipelineMetrics.CROP, 5 * MILLI);
+        metrics.increment(PipelineMetrics.PREVIEW_CROPS);
+        
+        metrics.reset();
+        
+        assertEquals(0, metrics.count(PipelineMetrics.CROP));
+        assertEquals(0, metrics.maxMillis(PipelineMetrics.CROP), 0);
+        assertEquals(0, metrics.counter(PipelineMetrics.PREVIEW_CROPS));
+    }
+    
+    @Test
+    public void negativeDurationsCountAsZero() {
+        PipelineMetrics metrics = new PipelineMetrics();
+        metrics.recordNanos(PipelineMetrics.READ, -5);
+        
+        assertEquals(1, metrics.count(PipelineMetrics.READ));
+        assertEquals(0, metrics.maxMillis(PipelineMetrics.READ), 0);
+    }
+    
+    // Bucket bounds grow by x1.5, so a percentile may overshoot by that much
+    private static void assertWithinOneBucket(double expected, double actual) {
+        assertTrue("expected about " + expected + ", got " + actual, actual >= expected && actual <= expected * 1.5);
+    }
+}
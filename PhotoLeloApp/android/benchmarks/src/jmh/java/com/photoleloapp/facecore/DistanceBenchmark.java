@@ -0,0 +1,43 @@
+package com.photoleloapp.facecore;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+// Distance between two vectors: the FeatureLayout size the app compares, and
+// larger ones to see how the loop scales
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class DistanceBenchmark {
+    
+    @Param({"58", "256", "1024"})
+    int dimension;
+    
+    private float[] features1;
+    private float[] features2;
+    
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        features1 = new float[dimension];
+        features2 = new float[dimension];
+        for (int i = 0; i < dimension; i++) {
+            features1[i] = random.nextFloat();
+            features2[i] = random.nextFloat();
+        }
+    }
+    
+    @Benchmark
+    public double euclideanDistance() {
+        return FaceScores.euclideanDistance(features1, features2);
+    }
+}
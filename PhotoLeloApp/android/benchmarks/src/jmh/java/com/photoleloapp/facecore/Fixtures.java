@@ -0,0 +1,78 @@
+package com.photoleloapp.facecore;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+import javax.imageio.ImageIO;
+
+// Square size x size rasters for the benchmarks:
+//   noise    - uniform random ARGB, worst case for branches and the skin test
+//   photo    - first JPEG in the -Dfacecore.fixtures directory (the sample
+//              photos shipped with the app), resampled through the raster's
+//              offset tables the way the app resamples its previews
+// Each can also be quantised to RGB565 and held packed, like a decoded RGB_565
+// bitmap.
+final class Fixtures {
+    
+    private Fixtures() {
+    }
+    
+    static PixelRaster raster(String fixture, int size) {
+        return raster(fixture, size, false);
+    }
+    
+    static PixelRaster raster(String fixture, int size, boolean rgb565) {
+        switch (fixture) {
+            case "noise":
+                return load(noise(size), size, size, rgb565);
+            case "photo":
+                return photo(size, rgb565);
+            default:
+                throw new IllegalArgumentException("Unknown fixture " + fixture);
+        }
+    }
+    
+    private static PixelRaster load(int[] pixels, int width, int height, boolean rgb565) {
+        if (rgb565) {
+            for (int i = 0; i < pixels.length; i++) {
+                pixels[i] = Rgb565Lut.expand(Rgb565Lut.pack(pixels[i]));
+            }
+        }
+        return new PixelRaster().load(new ArrayPixelSource(pixels, width, height, rgb565), 0);
+    }
+    
+    private static int[] noise(int size) {
+        Random random = new Random(42);
+        int[] pixels = new int[size * size];
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] = 0xff000000 | random.nextInt(0x1000000);
+        }
+        return pixels;
+    }
+    
+    private static PixelRaster photo(int size, boolean rgb565) {
+        String dir = System.getProperty("facecore.fixtures");
+        File[] files = dir != null ? new File(dir).listFiles((d, name) -> name.toLowerCase().endsWith(".jpg")) : null;
+        if (files == null || files.length == 0) {
+            throw new IllegalStateException("No JPEG fixtures in -Dfacecore.fixtures=" + dir);
+        }
+        Arrays.sort(files);
+        
+        BufferedImage image;
+        try {
+            image = ImageIO.read(files[0]);
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to read " + files[0], e);
+        }
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int[] pixels = image.getRGB(0, 0, width, height, null, 0, width);
+        
+        PixelRaster raster = load(pixels, width, height, rgb565);
+        raster.resample(size, size);
+        return raster;
+    }
+}
@@ -0,0 +1,58 @@
+package com.photoleloapp.facecore;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+// The production extractor (skin tone, spatial grid and histogram blocks in
+// one pass) across raster sizes and grid/histogram sampling strides. Step 4
+// is what the app ships; the others show how cost scales with density.
+// rgb565 runs the packed RGB_565 storage the app decodes into. fingerprint is
+// the cache key computed before every extraction, over the same samples.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class FusedExtractorBenchmark {
+    
+    @Param({"128", "256", "512", "1024"})
+    int size;
+    
+    @Param({"noise", "photo"})
+    String fixture;
+    
+    @Param({"1", "2", "4", "8"})
+    int step;
+    
+    @Param({"argb", "rgb565"})
+    String format;
+    
+    private PixelRaster raster;
+    private FusedFeatureExtractor extractor;
+    private final float[] features = FeatureLayout.newVector();
+    
+    @Setup
+    public void setUp() {
+        raster = Fixtures.raster(fixture, size, format.equals("rgb565"));
+        extractor = new FusedFeatureExtractor(step);
+    }
+    
+    @Benchmark
+    public float[] extract(PixelCounter counter) {
+        extractor.extract(raster, features);
+        counter.add(raster);
+        return features;
+    }
+    
+    @Benchmark
+    public long fingerprint(PixelCounter counter) {
+        counter.add(raster);
+        return extractor.fingerprint(raster);
+    }
+}
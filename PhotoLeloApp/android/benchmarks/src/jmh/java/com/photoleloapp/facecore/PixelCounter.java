@@ -0,0 +1,25 @@
+package com.photoleloapp.facecore;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+// Pixels processed, reported by JMH next to the primary score as a rate
+// (pixels per benchmark time unit); its inverse is the per-pixel cost
+@State(Scope.Thread)
+@AuxCounters(AuxCounters.Type.OPERATIONS)
+public class PixelCounter {
+    
+    public long pixels;
+    
+    @Setup(Level.Iteration)
+    public void clear() {
+        pixels = 0;
+    }
+    
+    void add(PixelRaster raster) {
+        pixels += (long) raster.width * raster.height;
+    }
+}
@@ -0,0 +1,62 @@
+package com.photoleloapp.facecore;
+
+import java.nio.ShortBuffer;
+
+// PixelSource over a row-major ARGB array, for JVM tests, benchmarks and
+// server-side use where there is no Bitmap
+public final class ArrayPixelSource implements PixelSource {
+    
+    private final int[] pixels;
+    private final int width;
+    private final int height;
+    private final boolean rgb565;
+    
+    public ArrayPixelSource(int[] pixels, int width, int height) {
+        this(pixels, width, height, false);
+    }
+    
+    // rgb565: the caller guarantees every pixel is Rgb565Lut.expand() of some
+    // colour, so the array can stand in for an RGB_565 bitmap
+    public ArrayPixelSource(int[] pixels, int width, int height, boolean rgb565) {
+        if (width <= 0 || height <= 0 || pixels.length < width * height) {
+            throw new IllegalArgumentException("Need " + width + "x" + height + " pixels, got " + pixels.length);
+        }
+        this.pixels = pixels;
+        this.width = width;
+        this.height = height;
+        this.rgb565 = rgb565;
+    }
+    
+    @Override
+    public int width() {
+        return width;
+    }
+    
+    @Override
+    public int height() {
+        return height;
+    }
+    
+    @Override
+    public boolean isRgb565() {
+        return rgb565;
+    }
+    
+    @Override
+    public void copyRgb565(ShortBuffer dst) {
+        for (int i = 0; i < width * height; i++) {
+            dst.put((short) Rgb565Lut.pack(pixels[i]));
+        }
+    }
+    
+    @Override
+    public void getPixels(int[] dst, int offset, int stride, int left, int top, int width, int height) {
+        if (left < 0 || top < 0 || left + width > this.width || top + height > this.height) {
+            throw new IllegalArgumentException("Rectangle " + left + "," + top + " " + width + "x" + height
+                + " outside " + this.width + "x" + this.height);
+        }
+        for (int y = 0; y < height; y++) {
+            System.arraycopy(pixels, (top + y) * this.width + left, dst, offset + y * stride, width);
+        }
+    }
+}
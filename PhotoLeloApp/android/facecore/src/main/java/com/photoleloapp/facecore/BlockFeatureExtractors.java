@@ -0,0 +1,197 @@
+package com.photoleloapp.facecore;
+
+// The original per-block extractors (skin tone, 4x4 spatial grid, 16-bin
+// histograms, LBP texture and Sobel edges), one full pass each. The pipeline
+// uses FusedFeatureExtractor; these stay as the readable reference versions
+// for tests and experiments with other feature sets.
+public final class BlockFeatureExtractors {
+    
+    private BlockFeatureExtractors() {
+    }
+    
+    public static double[] extractSkinToneFeatures(PixelRaster raster) {
+        int width = raster.width;
+        int height = raster.height;
+        
+        double[] features = new double[12];
+        
+        double sumR = 0, sumG = 0, sumB = 0;
+        double sumR2 = 0, sumG2 = 0, sumB2 = 0;
+        int count = 0;
+        
+        for (int y = 0; y < height; y++) {
+            int row = raster.rowOffset[y];
+            for (int x = 0; x < width; x++) {
+                int pixel = raster.argb(row + raster.colOffset[x]);
+                int r = (pixel >> 16) & 0xff;
+                int g = (pixel >> 8) & 0xff;
+                int b = pixel & 0xff;
+                
+                if (FusedFeatureExtractor.isSkinTone(r, g, b)) {
+                    sumR += r;
+                    sumG += g;
+                    sumB += b;
+                    sumR2 += r * r;
+                    sumG2 += g * g;
+                    sumB2 += b * b;
+                    count++;
+                }
+            }
+        }
+        
+        if (count > 0) {
+            double meanR = sumR / count;
+            double meanG = sumG / count;
+            double meanB = sumB / count;
+            
+            double stdR = Math.sqrt(sumR2 / count - meanR * meanR);
+            double stdG = Math.sqrt(sumG2 / count - meanG * meanG);
+            double stdB = Math.sqrt(sumB2 / count - meanB * meanB);
+            
+            features[0] = meanR / 255.0;
+            features[1] = meanG / 255.0;
+            features[2] = meanB / 255.0;
+            features[3] = stdR / 255.0;
+            features[4] = stdG / 255.0;
+            features[5] = stdB / 255.0;
+            features[6] = (double) count / (width * height);
+        }
+        
+        return features;
+    }
+    
+    public static double[] extractSpatialColorFeatures(PixelRaster raster) {
+        int width = raster.width;
+        int height = raster.height;
+        int gridSize = 4;
+        
+        double[] features = new double[gridSize * gridSize * 3];
+        
+        int cellWidth = width / gridSize;
+        int cellHeight = height / gridSize;
+        
+        for (int gy = 0; gy < gridSize; gy++) {
+            for (int gx = 0; gx < gridSize; gx++) {
+                double sumR = 0, sumG = 0, sumB = 0;
+                int count = 0;
+                
+                int startX = gx * cellWidth;
+                int endX = Math.min((gx + 1) * cellWidth, width);
+                int startY = gy * cellHeight;
+                int endY = Math.min((gy + 1) * cellHeight, height);
+                
+                for (int y = startY; y < endY; y++) {
+                    int row = raster.rowOffset[y];
+                    for (int x = startX; x < endX; x++) {
+                        int pixel = raster.argb(row + raster.colOffset[x]);
+                        sumR += (pixel >> 16) & 0xff;
+                        sumG += (pixel >> 8) & 0xff;
+                        sumB += pixel & 0xff;
+                        count++;
+                    }
+                }
+                
+                int idx = (gy * gridSize + gx) * 3;
+                features[idx] = sumR / (count * 255.0);
+                features[idx + 1] = sumG / (count * 255.0);
+                features[idx + 2] = sumB / (count * 255.0);
+            }
+        }
+        
+        return features;
+    }
+    
+    public static double[] extractColorFeatures(PixelRaster raster) {
+        int[] histR = new int[16];
+        int[] histG = new int[16];
+        int[] histB = new int[16];
+        
+        int width = raster.width;
+        int height = raster.height;
+        
+        for (int y = 0; y < height; y++) {
+            int row = raster.rowOffset[y];
+            for (int x = 0; x < width; x++) {
+                int pixel = raster.argb(row + raster.colOffset[x]);
+                int r = (pixel >> 16) & 0xff;
+                int g = (pixel >> 8) & 0xff;
+                int b = pixel & 0xff;
+                
+                histR[r / 16]++;
+                histG[g / 16]++;
+                histB[b / 16]++;
+            }
+        }
+        
+        double[] features = new double[48];
+        int totalPixels = width * height;
+        for (int i = 0; i < 16; i++) {
+            features[i] = (double) histR[i] / totalPixels;
+            features[i + 16] = (double) histG[i] / totalPixels;
+            features[i + 32] = (double) histB[i] / totalPixels;
+        }
+        
+        return features;
+    }
+    
+    public static double[] extractTextureFeatures(PixelRaster raster) {
+        int width = raster.width;
+        int height = raster.height;
+        int[] gray = raster.grayscale();
+        double[] features = new double[16];
+        
+        for (int y = 1; y < height - 1; y++) {
+            int row = y * width;
+            int above = row - width;
+            for (int x = 1; x < width - 1; x++) {
+                int center = gray[row + x];
+                int pattern = 0;
+                
+                if (gray[above + x - 1] >= center) pattern |= 1;
+                if (gray[above + x] >= center) pattern |= 2;
+                if (gray[above + x + 1] >= center) pattern |= 4;
+                if (gray[row + x + 1] >= center) pattern |= 8;
+                
+                features[pattern % 16]++;
+            }
+        }
+        
+        double total = (width - 2) * (height - 2);
+        for (int i = 0; i < features.length; i++) {
+            features[i] /= total;
+        }
+        
+        return features;
+    }
+    
+    public static double[] extractEdgeFeatures(PixelRaster raster) {
+        int width = raster.width;
+        int height = raster.height;
+        int[] gray = raster.grayscale();
+        double[] features = new double[16];
+        
+        for (int y = 1; y < height - 1; y++) {
+            int row = y * width;
+            int above = row - width;
+            int below = row + width;
+            for (int x = 1; x < width - 1; x++) {
+                int gx = -gray[above + x - 1] + gray[above + x + 1]
+                       - 2 * gray[row + x - 1] + 2 * gray[row + x + 1]
+                       - gray[below + x - 1] + gray[below + x + 1];
+                
+                int gy = -gray[above + x - 1] - 2 * gray[above + x] - gray[above + x + 1]
+                       + gray[below + x - 1] + 2 * gray[below + x] + gray[below + x + 1];
+                
+                int magnitude = (int) Math.sqrt(gx*gx + gy*gy);
+                features[Math.min(15, magnitude / 16)]++;
+            }
+        }
+        
+        double total = (width - 2) * (height - 2);
+        for (int i = 0; i < features.length; i++) {
+            features[i] /= total;
+        }
+        
+        return features;
+    }
+}
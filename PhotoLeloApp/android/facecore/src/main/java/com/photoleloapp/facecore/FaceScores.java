@@ -0,0 +1,39 @@
+package com.photoleloapp.facecore;
+
+// Distance between FeatureLayout vectors and the confidence scales built on it.
+// Face crops and whole images land on different distance ranges, so each has
+// its own normaliser and match threshold.
+public final class FaceScores {
+    
+    // 70% for face-only comparison (more lenient since we're only comparing faces)
+    public static final double FACE_MATCH_THRESHOLD = 70.0;
+    
+    // More strict threshold for full image comparison
+    public static final double FALLBACK_MATCH_THRESHOLD = 85.0;
+    
+    private FaceScores() {
+    }
+    
+    public static double euclideanDistance(float[] features1, float[] features2) {
+        double sum = 0;
+        int length = Math.min(features1.length, features2.length);
+        for (int i = 0; i < length; i++) {
+            double diff = (double) features1[i] - features2[i];
+            sum += diff * diff;
+        }
+        return Math.sqrt(sum);
+    }
+    
+    public static double faceConfidence(double distance) {
+        // Normalize distance - face-only comparison has different scale
+        // Same person: 0.5-3.0
+        // Different people: 3.5+
+        double normalizedDistance = Math.min(distance / 5.0, 1.0);
+        return (1 - normalizedDistance) * 100;
+    }
+    
+    public static double fallbackConfidence(double distance) {
+        double normalizedDistance = Math.min(distance / 3.5, 1.0);
+        return (1 - normalizedDistance) * 100;
+    }
+}
@@ -0,0 +1,66 @@
+package com.photoleloapp.facecore;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Where each tracked face was last extracted, keyed by the detector's tracking
+// ID. While a face stays close to that box a frame adds nothing new and the
+// caller can skip it; once it moves or resizes past the tolerance (or has been
+// skipped for too long) it is due for a fresh extraction.
+// Coordinates are the detector's upright face boxes. Not thread-safe.
+public final class FaceTrackCache {
+    
+    public static final float MOVE_TOLERANCE = 0.1f; // of the face size, per edge
+    // Frames skipped before a forced re-extraction, so a face that holds still
+    // is still looked at every MAX_REUSE + 1 frames
+    public static final int MAX_REUSE = 3;
+    static final int MAX_TRACKS = 4;
+    
+    private static final class Track {
+        int left, top, right, bottom; // box at the last extraction
+        int reused;
+    }
+    
+    private final Map<Integer, Track> tracks = new LinkedHashMap<Integer, Track>(8, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+        
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, Track> eldest) {
+            return size() > MAX_TRACKS;
+        }
+    };
+    
+    // True, and counted as one more skipped frame, when the face has not moved
+    // enough since its last extraction to need another
+    public boolean reuse(int trackingId, int left, int top, int right, int bottom) {
+        Track track = tracks.get(trackingId);
+        if (track == null || track.reused >= MAX_REUSE || moved(track, left, top, right, bottom)) {
+            return false;
+        }
+        track.reused++;
+        return true;
+    }
+    
+    // Records a fresh extraction of the face at this box
+    public void update(int trackingId, int left, int top, int right, int bottom) {
+        Track track = tracks.get(trackingId);
+        if (track == null) {
+            track = new Track();
+            tracks.put(trackingId, track);
+        }
+        track.left = left;
+        track.top = top;
+        track.right = right;
+        track.bottom = bottom;
+        track.reused = 0;
+    }
+    
+    private static boolean moved(Track track, int left, int top, int right, int bottom) {
+        int size = Math.max(track.right - track.left, track.bottom - track.top);
+        float tolerance = size * MOVE_TOLERANCE;
+        return Math.abs(left - track.left) > tolerance
+            || Math.abs(top - track.top) > tolerance
+            || Math.abs(right - track.right) > tolerance
+            || Math.abs(bottom - track.bottom) > tolerance;
+    }
+}
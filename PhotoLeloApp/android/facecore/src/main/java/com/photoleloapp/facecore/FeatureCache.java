@@ -0,0 +1,218 @@
+package com.photoleloapp.facecore;
+
+import java.util.Arrays;
+
+// Extracted feature vectors keyed by FusedFeatureExtractor.fingerprint, a hash
+// of exactly the pixels a vector was computed from, so identical crops (e.g.
+// the same reference photo) skip extraction while different faces can never
+// share an entry.
+//
+// Entries live in fixed slots sized from the byte budget: vectors are copied in
+// and out of preallocated arrays and the LRU order is kept in index links, so a
+// warm cache never allocates on get or put.
+public final class FeatureCache {
+    
+    public static final int DEFAULT_BUDGET_BYTES = 256 * 1024;
+    
+    // Vector plus key, LRU links and hash index slots
+    public static final int ENTRY_BYTES = FeatureLayout.DIMENSION * 4 + 32;
+    
+    private static final int NONE = -1;
+    
+    private int budgetBytes;
+    private int capacity;
+    private long[] keys;
+    private float[][] values;
+    private int[] prev;
+    private int[] next;
+    private int[] table; // open addressing: slot + 1, 0 when empty
+    private int head = NONE; // most recently used
+    private int tail = NONE; // least recently used
+    private int size;
+    
+    private long hits;
+    private long misses;
+    private long evictions;
+    
+    public FeatureCache(int budgetBytes) {
+        allocate(budgetBytes);
+    }
+    
+    // Copies the cached vector into out and returns true on a hit
+    public synchronized boolean get(long fingerprint, float[] out) {
+        int slot = find(fingerprint);
+        if (slot == NONE) {
+            misses++;
+            return false;
+        }
+        hits++;
+        moveToFront(slot);
+        System.arraycopy(values[slot], 0, out, 0, FeatureLayout.DIMENSION);
+        return true;
+    }
+    
+    public synchronized void put(long fingerprint, float[] features) {
+        int slot = find(fingerprint);
+        if (slot == NONE) {
+            if (size < capacity) {
+                slot = size++;
+            } else {
+                slot = tail;
+                unlink(slot);
+                removeFromTable(keys[slot]);
+                evictions++;
+            }
+            keys[slot] = fingerprint;
+            addToTable(slot);
+            linkFront(slot);
+            if (values[slot] == null) {
+                values[slot] = FeatureLayout.newVector();
+            }
+        } else {
+            moveToFront(slot);
+        }
+        System.arraycopy(features, 0, values[slot], 0, FeatureLayout.DIMENSION);
+    }
+    
+    public synchronized void resize(int budgetBytes) {
+        // Keep the most recently used entries that still fit
+        int kept = Math.min(size, capacityFor(budgetBytes));
+        long[] keptKeys = new long[kept];
+        float[][] keptValues = new float[kept][];
+        for (int i = 0, slot = head; i < kept; i++, slot = next[slot]) {
+            keptKeys[i] = keys[slot];
+            keptValues[i] = values[slot];
+        }
+        evictions += size - kept;
+        
+        allocate(budgetBytes);
+        for (int i = kept - 1; i >= 0; i--) {
+            put(keptKeys[i], keptValues[i]);
+        }
+    }
+    
+    public synchronized void clear() {
+        Arrays.fill(table, 0);
+        head = tail = NONE;
+        size = 0;
+    }
+    
+    // Zeroes the hit, miss and eviction counts; entries stay cached
+    public synchronized void resetCounters() {
+        hits = misses = evictions = 0;
+    }
+    
+    public synchronized long hitCount() {
+        return hits;
+    }
+    
+    public synchronized long missCount() {
+        return misses;
+    }
+    
+    public synchronized long evictionCount() {
+        return evictions;
+    }
+    
+    public synchronized int sizeBytes() {
+        return size * ENTRY_BYTES;
+    }
+    
+    public synchronized int budgetBytes() {
+        return budgetBytes;
+    }
+    
+    private void allocate(int budgetBytes) {
+        this.budgetBytes = budgetBytes;
+        capacity = capacityFor(budgetBytes);
+        keys = new long[capacity];
+        values = new float[capacity][];
+        prev = new int[capacity];
+        next = new int[capacity];
+        // Power of two at least twice the capacity keeps probe chains short
+        table = new int[Integer.highestOneBit(capacity) << 2];
+        head = tail = NONE;
+        size = 0;
+    }
+    
+    private static int capacityFor(int budgetBytes) {
+        return Math.max(1, budgetBytes / ENTRY_BYTES);
+    }
+    
+    private int bucket(long key) {
+        long h = key * 0x9e3779b97f4a7c15L;
+        return (int) (h >>> 32) & (table.length - 1);
+    }
+    
+    private int find(long key) {
+        int mask = table.length - 1;
+        for (int i = bucket(key); table[i] != 0; i = (i + 1) & mask) {
+            int slot = table[i] - 1;
+            if (keys[slot] == key) {
+                return slot;
+            }
+        }
+        return NONE;
+    }
+    
+    private void addToTable(int slot) {
+        int mask = table.length - 1;
+        int i = bucket(keys[slot]);
+        while (table[i] != 0) {
+            i = (i + 1) & mask;
+        }
+        table[i] = slot + 1;
+    }
+    
+    private void removeFromTable(long key) {
+        int mask = table.length - 1;
+        int i = bucket(key);
+        while (keys[table[i] - 1] != key) {
+            i = (i + 1) & mask;
+        }
+        table[i] = 0;
+        
+        // Shift later entries of the probe chain back so lookups never stop early
+        for (int j = (i + 1) & mask; table[j] != 0; j = (j + 1) & mask) {
+            int home = bucket(keys[table[j] - 1]);
+            boolean reachable = i <= j ? (i < home && home <= j) : (i < home || home <= j);
+            if (!reachable) {
+                table[i] = table[j];
+                table[j] = 0;
+                i = j;
+            }
+        }
+    }
+    
+    private void linkFront(int slot) {
+        prev[slot] = NONE;
+        next[slot] = head;
+        if (head != NONE) {
+            prev[head] = slot;
+        }
+        head = slot;
+        if (tail == NONE) {
+            tail = slot;
+        }
+    }
+    
+    private void unlink(int slot) {
+        if (prev[slot] != NONE) {
+            next[prev[slot]] = next[slot];
+        } else {
+            head = next[slot];
+        }
+        if (next[slot] != NONE) {
+            prev[next[slot]] = prev[slot];
+        } else {
+            tail = prev[slot];
+        }
+    }
+    
+    private void moveToFront(int slot) {
+        if (slot != head) {
+            unlink(slot);
+            linkFront(slot);
+        }
+    }
+}
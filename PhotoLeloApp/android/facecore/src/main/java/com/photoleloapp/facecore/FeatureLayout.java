@@ -0,0 +1,30 @@
+package com.photoleloapp.facecore;
+
+// Versioned layout of a face feature vector. Blocks are stored back to back in a
+// single float[]; bump VERSION whenever a block changes size, order or meaning so
+// persisted templates from an older layout are discarded instead of misread.
+public final class FeatureLayout {
+    
+    public static final int VERSION = 1;
+    
+    // Skin tone: mean RGB, std-dev RGB, skin pixel ratio
+    public static final int SKIN_OFFSET = 0;
+    public static final int SKIN_DIM = 7;
+    
+    // Mean RGB of each cell in a 3x3 grid
+    public static final int SPATIAL_OFFSET = SKIN_OFFSET + SKIN_DIM;
+    public static final int SPATIAL_DIM = 27;
+    
+    // 8-bin R, G and B histograms
+    public static final int HISTOGRAM_OFFSET = SPATIAL_OFFSET + SPATIAL_DIM;
+    public static final int HISTOGRAM_DIM = 24;
+    
+    public static final int DIMENSION = HISTOGRAM_OFFSET + HISTOGRAM_DIM;
+    
+    private FeatureLayout() {
+    }
+    
+    public static float[] newVector() {
+        return new float[DIMENSION];
+    }
+}
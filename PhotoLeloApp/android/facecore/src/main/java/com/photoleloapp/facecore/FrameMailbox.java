@@ -0,0 +1,54 @@
+package com.photoleloapp.facecore;
+
+// Single-slot hand-off between a frame producer and a slower consumer. A new
+// frame replaces one that is still waiting, so the consumer always picks up the
+// most recent frame and latency stays bounded by one frame of processing.
+public final class FrameMailbox<T> {
+    
+    private T pending;
+    private boolean busy;
+    private long offered;
+    private long dropped;
+    
+    // Stores the frame; returns true when the consumer was idle and the caller
+    // must start it
+    public synchronized boolean offer(T frame) {
+        offered++;
+        if (pending != null) {
+            dropped++;
+        }
+        pending = frame;
+        if (busy) {
+            return false;
+        }
+        busy = true;
+        return true;
+    }
+    
+    // Next frame for the consumer, or null once drained (the consumer is then idle)
+    public synchronized T next() {
+        T frame = pending;
+        pending = null;
+        if (frame == null) {
+            busy = false;
+        }
+        return frame;
+    }
+    
+    // Drops any waiting frame and marks the consumer idle
+    public synchronized void clear() {
+        if (pending != null) {
+            dropped++;
+            pending = null;
+        }
+        busy = false;
+    }
+    
+    public synchronized long offeredCount() {
+        return offered;
+    }
+    
+    public synchronized long droppedCount() {
+        return dropped;
+    }
+}
@@ -0,0 +1,301 @@
+package com.photoleloapp.facecore;
+
+import java.nio.ShortBuffer;
+import java.util.Arrays;
+
+// Computes the skin tone, 3x3 spatial grid and 8-bin histogram blocks of a
+// FeatureLayout vector in a single pass over the raster. Each block keeps its
+// own sampling stride; a pixel sampled by any of them is read once and feeds
+// every accumulator that samples it, so the results are identical to running
+// the three extractors separately.
+// RGB565 rasters are read as raw 16-bit values, which index Rgb565Lut for
+// skin membership and histogram slots; the channel sums come straight from
+// the 5/6-bit fields, so no ARGB pixel is ever built. Each storage has its own
+// copy of the scan loop, so neither pays for the other's branches.
+// Instances hold scratch state and must not be shared between threads.
+public final class FusedFeatureExtractor {
+    
+    private static final int GRID_SIZE = 3;
+    private static final int SAMPLE_STEP = 4; // grid and histogram stride of the FeatureLayout blocks
+    
+    private static final int SKIN = 1;
+    private static final int SPATIAL = 2;
+    private static final int HISTOGRAM = 4;
+    
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+    
+    // Sampled columns of the current raster (as storage offsets) with the blocks that sample them
+    private int[] columns = new int[0];
+    private int[] columnFlags = new int[0];
+    private int[] columnCells = new int[0];
+    
+    private final long[] spatialSums = new long[GRID_SIZE * GRID_SIZE * 3];
+    private final int[] spatialCounts = new int[GRID_SIZE * GRID_SIZE];
+    private final int[] histogram = new int[FeatureLayout.HISTOGRAM_DIM];
+    private final long[] skinSums = new long[6]; // R, G, B, then their squares
+    private int skinCount;
+    private int histogramCount;
+    private final int sampleStep;
+    
+    public FusedFeatureExtractor() {
+        this(SAMPLE_STEP);
+    }
+    
+    // Other strides change the vector and are only for measuring the cost of
+    // sampling density; stored templates assume SAMPLE_STEP
+    FusedFeatureExtractor(int sampleStep) {
+        if (sampleStep < 1) {
+            throw new IllegalArgumentException("Sample step must be positive, got " + sampleStep);
+        }
+        this.sampleStep = sampleStep;
+    }
+    
+    // Writes all FeatureLayout blocks straight into out
+    public void extract(PixelRaster raster, float[] out) {
+        int width = raster.width;
+        int height = raster.height;
+        int skinStep = Math.max(1, Math.min(width, height) / 50);
+        int cellWidth = width / GRID_SIZE;
+        int cellHeight = height / GRID_SIZE;
+        
+        int columnCount = planColumns(raster.colOffset, width, skinStep, cellWidth);
+        
+        Arrays.fill(spatialSums, 0);
+        Arrays.fill(spatialCounts, 0);
+        Arrays.fill(histogram, 0);
+        if (raster.rgb565) {
+            scanRgb565(raster, columnCount, skinStep, cellHeight);
+        } else {
+            scanArgb(raster, columnCount, skinStep, cellHeight);
+        }
+        
+        // Same normalisation as the per-block extractors
+        Arrays.fill(out, FeatureLayout.SKIN_OFFSET, FeatureLayout.SKIN_OFFSET + FeatureLayout.SKIN_DIM, 0f);
+        if (skinCount > 0) {
+            double meanR = (double) skinSums[0] / skinCount;
+            double meanG = (double) skinSums[1] / skinCount;
+            double meanB = (double) skinSums[2] / skinCount;
+            int skin = FeatureLayout.SKIN_OFFSET;
+            out[skin] = (float) (meanR / 255.0);
+            out[skin + 1] = (float) (meanG / 255.0);
+            out[skin + 2] = (float) (meanB / 255.0);
+            out[skin + 3] = (float) (Math.sqrt((double) skinSums[3] / skinCount - meanR * meanR) / 255.0);
+            out[skin + 4] = (float) (Math.sqrt((double) skinSums[4] / skinCount - meanG * meanG) / 255.0);
+            out[skin + 5] = (float) (Math.sqrt((double) skinSums[5] / skinCount - meanB * meanB) / 255.0);
+            out[skin + 6] = (float) ((double) skinCount / ((width / skinStep) * (height / skinStep)));
+        }
+        
+        for (int cell = 0; cell < GRID_SIZE * GRID_SIZE; cell++) {
+            int count = spatialCounts[cell];
+            int idx = cell * 3;
+            int dst = FeatureLayout.SPATIAL_OFFSET + idx;
+            if (count > 0) {
+                out[dst] = (float) (spatialSums[idx] / (count * 255.0));
+                out[dst + 1] = (float) (spatialSums[idx + 1] / (count * 255.0));
+                out[dst + 2] = (float) (spatialSums[idx + 2] / (count * 255.0));
+            } else {
+                out[dst] = out[dst + 1] = out[dst + 2] = 0f;
+            }
+        }
+        
+        for (int i = 0; i < FeatureLayout.HISTOGRAM_DIM; i++) {
+            out[FeatureLayout.HISTOGRAM_OFFSET + i] = (float) ((double) histogram[i] / histogramCount);
+        }
+    }
+    
+    // 64-bit FNV-1a over the raster size, the stride and exactly the pixels
+    // extract() samples, in upright order. The vector depends on nothing else,
+    // so this is a complete cache key for it at the cost of one read per
+    // sampled pixel instead of a hash of the whole image. RGB565 rasters hash
+    // their raw values, so the same image keys differently in each storage.
+    public long fingerprint(PixelRaster raster) {
+        int width = raster.width;
+        int height = raster.height;
+        int skinStep = Math.max(1, Math.min(width, height) / 50);
+        int cellHeight = height / GRID_SIZE;
+        int columnCount = planColumns(raster.colOffset, width, skinStep, width / GRID_SIZE);
+        
+        long hash = FNV_OFFSET;
+        hash = (hash ^ width) * FNV_PRIME;
+        hash = (hash ^ height) * FNV_PRIME;
+        hash = (hash ^ sampleStep) * FNV_PRIME;
+        hash = (hash ^ (raster.rgb565 ? 565 : 8888)) * FNV_PRIME;
+        int[] pixels = raster.pixels;
+        ShortBuffer packed = raster.packed;
+        for (int y = 0; y < height; y++) {
+            int rowFlags = sampledBy(y, skinStep, cellHeight);
+            if (rowFlags == 0) {
+                continue;
+            }
+            int row = raster.rowOffset[y];
+            if (raster.rgb565) {
+                for (int i = 0; i < columnCount; i++) {
+                    if ((columnFlags[i] & rowFlags) != 0) {
+                        hash = (hash ^ (packed.get(row + columns[i]) & 0xffff)) * FNV_PRIME;
+                    }
+                }
+            } else {
+                for (int i = 0; i < columnCount; i++) {
+                    if ((columnFlags[i] & rowFlags) != 0) {
+                        hash = (hash ^ pixels[row + columns[i]]) * FNV_PRIME;
+                    }
+                }
+            }
+        }
+        return hash;
+    }
+    
+    private void scanArgb(PixelRaster raster, int columnCount, int skinStep, int cellHeight) {
+        int[] pixels = raster.pixels;
+        long sumR = 0, sumG = 0, sumB = 0;
+        long sumR2 = 0, sumG2 = 0, sumB2 = 0;
+        int skins = 0;
+        int histogramPixels = 0;
+        
+        for (int y = 0; y < raster.height; y++) {
+            int rowFlags = sampledBy(y, skinStep, cellHeight);
+            if (rowFlags == 0) {
+                continue;
+            }
+            int row = raster.rowOffset[y];
+            int cellRow = (rowFlags & SPATIAL) != 0 ? (y / cellHeight) * GRID_SIZE : 0;
+            
+            for (int i = 0; i < columnCount; i++) {
+                int flags = columnFlags[i] & rowFlags;
+                if (flags == 0) {
+                    continue;
+                }
+                
+                int pixel = pixels[row + columns[i]];
+                int r = (pixel >> 16) & 0xff;
+                int g = (pixel >> 8) & 0xff;
+                int b = pixel & 0xff;
+                
+                if ((flags & SKIN) != 0 && isSkinTone(r, g, b)) {
+                    sumR += r; sumG += g; sumB += b;
+                    sumR2 += r * r; sumG2 += g * g; sumB2 += b * b;
+                    skins++;
+                }
+                if ((flags & SPATIAL) != 0) {
+                    int cell = cellRow + columnCells[i];
+                    spatialSums[cell * 3] += r;
+                    spatialSums[cell * 3 + 1] += g;
+                    spatialSums[cell * 3 + 2] += b;
+                    spatialCounts[cell]++;
+                }
+                if ((flags & HISTOGRAM) != 0) {
+                    histogram[r >> 5]++;
+                    histogram[8 + (g >> 5)]++;
+                    histogram[16 + (b >> 5)]++;
+                    histogramPixels++;
+                }
+            }
+        }
+        
+        skinSums[0] = sumR; skinSums[1] = sumG; skinSums[2] = sumB;
+        skinSums[3] = sumR2; skinSums[4] = sumG2; skinSums[5] = sumB2;
+        skinCount = skins;
+        histogramCount = histogramPixels;
+    }
+    
+    // Same scan over raw RGB565; channels are widened the way Bitmap.getPixels
+    // does it, so both scans give identical vectors
+    private void scanRgb565(PixelRaster raster, int columnCount, int skinStep, int cellHeight) {
+        ShortBuffer packed = raster.packed;
+        long sumR = 0, sumG = 0, sumB = 0;
+        long sumR2 = 0, sumG2 = 0, sumB2 = 0;
+        int skins = 0;
+        int histogramPixels = 0;
+        
+        for (int y = 0; y < raster.height; y++) {
+            int rowFlags = sampledBy(y, skinStep, cellHeight);
+            if (rowFlags == 0) {
+                continue;
+            }
+            int row = raster.rowOffset[y];
+            int cellRow = (rowFlags & SPATIAL) != 0 ? (y / cellHeight) * GRID_SIZE : 0;
+            
+            for (int i = 0; i < columnCount; i++) {
+                int flags = columnFlags[i] & rowFlags;
+                if (flags == 0) {
+                    continue;
+                }
+                
+                int key = packed.get(row + columns[i]) & 0xffff;
+                
+                if ((flags & SKIN) != 0 && Rgb565Lut.isSkin(key)) {
+                    int r = Rgb565Lut.red(key);
+                    int g = Rgb565Lut.green(key);
+                    int b = Rgb565Lut.blue(key);
+                    sumR += r; sumG += g; sumB += b;
+                    sumR2 += r * r; sumG2 += g * g; sumB2 += b * b;
+                    skins++;
+                }
+                if ((flags & SPATIAL) != 0) {
+                    int cell = cellRow + columnCells[i];
+                    spatialSums[cell * 3] += Rgb565Lut.red(key);
+                    spatialSums[cell * 3 + 1] += Rgb565Lut.green(key);
+                    spatialSums[cell * 3 + 2] += Rgb565Lut.blue(key);
+                    spatialCounts[cell]++;
+                }
+                if ((flags & HISTOGRAM) != 0) {
+                    int slots = Rgb565Lut.histogramSlots(key);
+                    histogram[slots & 0x1f]++;
+                    histogram[(slots >> 5) & 0x1f]++;
+                    histogram[slots >> 10]++;
+                    histogramPixels++;
+                }
+            }
+        }
+        
+        skinSums[0] = sumR; skinSums[1] = sumG; skinSums[2] = sumB;
+        skinSums[3] = sumR2; skinSums[4] = sumG2; skinSums[5] = sumB2;
+        skinCount = skins;
+        histogramCount = histogramPixels;
+    }
+    
+    private int planColumns(int[] colOffset, int width, int skinStep, int cellWidth) {
+        if (columns.length < width) {
+            columns = new int[width];
+            columnFlags = new int[width];
+            columnCells = new int[width];
+        }
+        
+        int count = 0;
+        for (int x = 0; x < width; x++) {
+            int flags = sampledBy(x, skinStep, cellWidth);
+            if (flags != 0) {
+                columns[count] = colOffset[x];
+                columnFlags[count] = flags;
+                columnCells[count] = (flags & SPATIAL) != 0 ? x / cellWidth : 0;
+                count++;
+            }
+        }
+        return count;
+    }
+    
+    // Which blocks sample coordinate v along one axis. The spatial grid samples
+    // every sampleStep-th pixel from the start of each cell and skips the remainder past
+    // the last full cell.
+    private int sampledBy(int v, int skinStep, int cellSize) {
+        int flags = 0;
+        if (v % skinStep == 0) {
+            flags |= SKIN;
+        }
+        if (cellSize > 0 && v < cellSize * GRID_SIZE && (v % cellSize) % sampleStep == 0) {
+            flags |= SPATIAL;
+        }
+        if (v % sampleStep == 0) {
+            flags |= HISTOGRAM;
+        }
+        return flags;
+    }
+    
+    public static boolean isSkinTone(int r, int g, int b) {
+        return r > 95 && g > 40 && b > 20 &&
+               r > g && r > b &&
+               Math.abs(r - g) > 15 &&
+               r - Math.min(g, b) > 15;
+    }
+}
@@ -0,0 +1,71 @@
+package com.photoleloapp.facecore;
+
+// Turns per-frame confidences into one match decision. It fires once the last
+// K frames have all cleared the threshold and stayed within tolerance of each
+// other, then stays quiet until the streak is broken by a miss.
+public final class MatchStabilizer {
+    
+    private final double threshold;
+    private final double tolerance;
+    private final double[] recent;
+    private int count;
+    private int next;
+    private boolean latched;
+    
+    public MatchStabilizer(int frames, double threshold, double tolerance) {
+        if (frames < 1) {
+            throw new IllegalArgumentException("Need at least one frame, got " + frames);
+        }
+        this.recent = new double[frames];
+        this.threshold = threshold;
+        this.tolerance = tolerance;
+    }
+    
+    // Adds one frame's confidence; returns true exactly when a match should be reported
+    public boolean add(double confidence) {
+        if (confidence < threshold) {
+            reset();
+            return false;
+        }
+        
+        recent[next] = confidence;
+        next = (next + 1) % recent.length;
+        if (count < recent.length) {
+            count++;
+        }
+        if (count < recent.length || latched) {
+            return false;
+        }
+        
+        double min = recent[0], max = recent[0];
+        for (double value : recent) {
+            min = Math.min(min, value);
+            max = Math.max(max, value);
+        }
+        if (max - min > tolerance) {
+            return false;
+        }
+        latched = true;
+        return true;
+    }
+    
+    // Breaks the streak, e.g. when a frame has no face
+    public void reset() {
+        count = 0;
+        next = 0;
+        latched = false;
+    }
+    
+    // Mean confidence over the current window
+    public double mean() {
+        double sum = 0;
+        for (int i = 0; i < count; i++) {
+            sum += recent[i];
+        }
+        return count > 0 ? sum / count : 0;
+    }
+    
+    public int frames() {
+        return recent.length;
+    }
+}
@@ -0,0 +1,191 @@
+package com.photoleloapp.facecore;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+
+// Reusable ARGB pixel buffer filled with one bulk copy, so the feature
+// extractors scan plain arrays instead of crossing JNI for every pixel.
+// Buffers only grow; one instance is kept per worker thread.
+//
+// The pixels stay in the order they were decoded in; EXIF rotation is applied
+// by indexing, not by copying. Upright (x, y) is found at
+// pixels[rowOffset[y] + colOffset[x]], and width/height are the upright size.
+// Because the tables are separable the same trick gives scaled views for free
+// (see resample), so neither crops nor resizes ever need a Bitmap copy.
+// Pixels come from any PixelSource, so the same raster and extractors run on
+// Android bitmaps and on plain arrays in JVM tests and tools.
+//
+// Whole RGB565 images skip the ARGB conversion altogether: the stored image
+// is copied raw into a direct ShortBuffer, at half the bytes per pixel, and
+// the offset tables point into that instead (see rgb565). The raw copy can
+// only take the whole bitmap, so crops of an RGB565 source are read as ARGB
+// through getPixels, which touches nothing outside the rectangle. Rotation
+// and resampling work the same way on both storages.
+public final class PixelRaster {
+    
+    int width;
+    int height;
+    int[] pixels = new int[0]; // as decoded, row-major
+    int[] rowOffset = new int[0];
+    int[] colOffset = new int[0];
+    
+    // When set the offsets index packed, which holds raw RGB565 values in the
+    // source's own row layout, and pixels is unused
+    boolean rgb565;
+    ShortBuffer packed;
+    
+    private int[] spareOffsets = new int[0];
+    private int[] gray = new int[0];
+    private boolean grayValid;
+    
+    // Copies the stored left/top/width/height rectangle of the source in one
+    // bulk read; the raster is then upright once rotated by rotationDegrees
+    public PixelRaster load(PixelSource source, int left, int top, int width, int height, int rotationDegrees) {
+        if (source.isRgb565() && left == 0 && top == 0 && width == source.width() && height == source.height()) {
+            return loadRgb565(source, rotationDegrees);
+        }
+        source.getPixels(prepare(width, height, rotationDegrees), 0, width, left, top, width, height);
+        return this;
+    }
+    
+    public PixelRaster load(PixelSource source, int rotationDegrees) {
+        return load(source, 0, 0, source.width(), source.height(), rotationDegrees);
+    }
+    
+    // Sizes the raster for an upright width x height image and returns the buffer to fill
+    int[] prepare(int width, int height) {
+        return prepare(width, height, 0);
+    }
+    
+    // Sizes the raster for a stored sourceWidth x sourceHeight image that is upright
+    // once rotated clockwise by rotationDegrees, and returns the buffer to fill
+    // with the stored pixels (stride == sourceWidth)
+    int[] prepare(int sourceWidth, int sourceHeight, int rotationDegrees) {
+        int size = sourceWidth * sourceHeight;
+        if (pixels.length < size) {
+            pixels = new int[size];
+        }
+        layout(sourceWidth, sourceHeight, rotationDegrees, sourceWidth);
+        rgb565 = false;
+        return pixels;
+    }
+    
+    // The whole stored image, raw; rows may be padded to the source's stride
+    private PixelRaster loadRgb565(PixelSource source, int rotationDegrees) {
+        int stride = source.rgb565Stride();
+        int size = stride * source.height();
+        if (packed == null || packed.capacity() < size) {
+            packed = ByteBuffer.allocateDirect(size * 2).order(ByteOrder.nativeOrder()).asShortBuffer();
+        }
+        packed.clear();
+        source.copyRgb565(packed);
+        layout(source.width(), source.height(), rotationDegrees, stride);
+        rgb565 = true;
+        return this;
+    }
+    
+    // Offset tables for a stored sourceWidth x sourceHeight image with stride
+    // entries between stored rows
+    private void layout(int sourceWidth, int sourceHeight, int rotationDegrees, int stride) {
+        boolean transposed = rotationDegrees == 90 || rotationDegrees == 270;
+        width = transposed ? sourceHeight : sourceWidth;
+        height = transposed ? sourceWidth : sourceHeight;
+        if (rowOffset.length < height) {
+            rowOffset = new int[height];
+        }
+        if (colOffset.length < width) {
+            colOffset = new int[width];
+        }
+        
+        switch (rotationDegrees) {
+            case 90:
+                for (int y = 0; y < height; y++) rowOffset[y] = y;
+                for (int x = 0; x < width; x++) colOffset[x] = (sourceHeight - 1 - x) * stride;
+                break;
+            case 180:
+                for (int y = 0; y < height; y++) rowOffset[y] = (sourceHeight - 1 - y) * stride;
+                for (int x = 0; x < width; x++) colOffset[x] = sourceWidth - 1 - x;
+                break;
+            case 270:
+                for (int y = 0; y < height; y++) rowOffset[y] = sourceWidth - 1 - y;
+                for (int x = 0; x < width; x++) colOffset[x] = x * stride;
+                break;
+            default:
+                for (int y = 0; y < height; y++) rowOffset[y] = y * stride;
+                for (int x = 0; x < width; x++) colOffset[x] = x;
+                break;
+        }
+        
+        grayValid = false;
+    }
+    
+    // Turns the raster into a width x height nearest-neighbour view of the current
+    // upright image; only the offset tables change, the pixels are not touched
+    public void resample(int width, int height) {
+        rowOffset = remap(rowOffset, this.height, height);
+        colOffset = remap(colOffset, this.width, width);
+        this.width = width;
+        this.height = height;
+        grayValid = false;
+    }
+    
+    // Picks the source entry under the centre of each of the to output positions
+    private int[] remap(int[] offsets, int from, int to) {
+        int[] result = spareOffsets.length >= to ? spareOffsets : new int[to];
+        for (int i = 0; i < to; i++) {
+            result[i] = offsets[(int) ((2L * i + 1) * from / (2L * to))];
+        }
+        spareOffsets = offsets;
+        return result;
+    }
+    
+    public int width() {
+        return width;
+    }
+    
+    public int height() {
+        return height;
+    }
+    
+    public int pixel(int x, int y) {
+        return argb(rowOffset[y] + colOffset[x]);
+    }
+    
+    // ARGB value at a storage offset, whichever storage is in use
+    int argb(int offset) {
+        return rgb565 ? Rgb565Lut.expand(packed.get(offset) & 0xffff) : pixels[offset];
+    }
+    
+    // Upright row-major luma plane computed once per image for the neighbourhood extractors
+    int[] grayscale() {
+        if (grayValid) {
+            return gray;
+        }
+        int size = width * height;
+        if (gray.length < size) {
+            gray = new int[size];
+        }
+        for (int y = 0, i = 0; y < height; y++) {
+            int row = rowOffset[y];
+            if (rgb565) {
+                for (int x = 0; x < width; x++, i++) {
+                    gray[i] = Rgb565Lut.luma(packed.get(row + colOffset[x]) & 0xffff);
+                }
+            } else {
+                for (int x = 0; x < width; x++, i++) {
+                    gray[i] = getGrayscale(pixels[row + colOffset[x]]);
+                }
+            }
+        }
+        grayValid = true;
+        return gray;
+    }
+    
+    public static int getGrayscale(int pixel) {
+        int r = (pixel >> 16) & 0xff;
+        int g = (pixel >> 8) & 0xff;
+        int b = pixel & 0xff;
+        return (int) (0.299 * r + 0.587 * g + 0.114 * b);
+    }
+}
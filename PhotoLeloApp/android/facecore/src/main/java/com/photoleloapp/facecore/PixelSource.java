@@ -0,0 +1,44 @@
+package com.photoleloapp.facecore;
+
+import java.nio.ShortBuffer;
+
+// Anything that can hand out a rectangle of packed ARGB pixels in stored
+// order. The contract matches Bitmap.getPixels, and the optional RGB565 copy
+// matches Bitmap.copyPixelsToBuffer, so the Android adapter is a straight
+// delegation.
+public interface PixelSource {
+    
+    int width();
+    
+    int height();
+    
+    // Writes the width x height rectangle at left/top into dst, starting at
+    // offset with stride ints between rows
+    void getPixels(int[] dst, int offset, int stride, int left, int top, int width, int height);
+    
+    // True when the source stores RGB565 and can hand it out unconverted
+    // through copyRgb565; rasters then keep the 16-bit values
+    default boolean isRgb565() {
+        return false;
+    }
+    
+    // Distance in pixels between stored rows of the copyRgb565 layout
+    default int rgb565Stride() {
+        return width();
+    }
+    
+    // Copies every stored row as raw RGB565, rgb565Stride() values apart, into
+    // dst starting at its position. Rasters only call it when isRgb565() is
+    // true; this fallback packs getPixels output a row at a time, which is
+    // exact for any source whose pixels are RGB565 colours.
+    default void copyRgb565(ShortBuffer dst) {
+        int width = width();
+        int[] row = new int[width];
+        for (int y = 0; y < height(); y++) {
+            getPixels(row, 0, width, 0, y, width, 1);
+            for (int x = 0; x < width; x++) {
+                dst.put((short) Rgb565Lut.pack(row[x]));
+            }
+        }
+    }
+}
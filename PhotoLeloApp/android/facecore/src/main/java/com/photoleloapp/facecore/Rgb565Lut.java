@@ -0,0 +1,72 @@
+package com.photoleloapp.facecore;
+
+// Per-colour answers for all 65,536 RGB565 values, so extractors working on
+// RGB_565 images look a pixel up instead of testing and dividing it: a skin
+// bitset (8 KB) and one int per colour holding its three histogram slots and
+// its luma. Entries are computed from the ARGB8888 value Android expands a 565
+// pixel to (each channel's high bits replicated into the low bits), so lookups
+// give exactly what the arithmetic gives on that expanded pixel.
+public final class Rgb565Lut {
+    
+    private static final long[] SKIN = new long[(1 << 16) / 64];
+    
+    // Histogram slots of R, G and B in 5 bits each (0-7, 8-15, 16-23), luma in bits 16-23.
+    // The slots only pay off where the 565 value is at hand; from ARGB the shifts are cheaper
+    private static final int[] INFO = new int[1 << 16];
+    
+    static {
+        for (int key = 0; key < INFO.length; key++) {
+            int argb = expand(key);
+            int r = (argb >> 16) & 0xff;
+            int g = (argb >> 8) & 0xff;
+            int b = argb & 0xff;
+            if (FusedFeatureExtractor.isSkinTone(r, g, b)) {
+                SKIN[key >>> 6] |= 1L << key;
+            }
+            int slots = (r >> 5) | (8 + (g >> 5)) << 5 | (16 + (b >> 5)) << 10;
+            INFO[key] = slots | PixelRaster.getGrayscale(argb) << 16;
+        }
+    }
+    
+    private Rgb565Lut() {
+    }
+    
+    // RGB565 key of an ARGB pixel; exact for pixels that were expanded from 565
+    public static int pack(int argb) {
+        return (argb >> 8) & 0xf800 | (argb >> 5) & 0x07e0 | (argb >> 3) & 0x001f;
+    }
+    
+    // ARGB8888 value of a 565 pixel, as Bitmap.getPixels returns it
+    public static int expand(int rgb565) {
+        int r = (rgb565 >> 11) & 0x1f;
+        int g = (rgb565 >> 5) & 0x3f;
+        int b = rgb565 & 0x1f;
+        return 0xff000000 | (r << 3 | r >> 2) << 16 | (g << 2 | g >> 4) << 8 | (b << 3 | b >> 2);
+    }
+    
+    // Expanded 8-bit channels straight from the 5/6-bit fields, without building
+    // the ARGB pixel: (v << 3 | v >> 2) == (v * 33) >> 2 and (v << 2 | v >> 4) == (v * 65) >> 4
+    public static int red(int rgb565) {
+        return ((rgb565 >>> 11) * 33) >> 2;
+    }
+    
+    public static int green(int rgb565) {
+        return (((rgb565 >> 5) & 0x3f) * 65) >> 4;
+    }
+    
+    public static int blue(int rgb565) {
+        return ((rgb565 & 0x1f) * 33) >> 2;
+    }
+    
+    public static boolean isSkin(int rgb565) {
+        return (SKIN[rgb565 >>> 6] & 1L << rgb565) != 0;
+    }
+    
+    public static int histogramSlots(int rgb565) {
+        return INFO[rgb565] & 0x7fff;
+    }
+    
+    public static int luma(int rgb565) {
+        return INFO[rgb565] >>> 16;
+    }
+}
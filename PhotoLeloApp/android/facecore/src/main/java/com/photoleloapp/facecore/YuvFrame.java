@@ -0,0 +1,62 @@
+package com.photoleloapp.facecore;
+
+// One camera frame in NV21 layout (full-resolution Y plane followed by
+// interleaved V/U samples at half resolution) plus the clockwise rotation that
+// makes it upright. Plain Java, so frames can be synthesised in JVM tests.
+public final class YuvFrame {
+    
+    public final byte[] nv21;
+    public final int width;
+    public final int height;
+    public final int rotationDegrees;
+    
+    public YuvFrame(byte[] nv21, int width, int height, int rotationDegrees) {
+        if (width <= 0 || height <= 0 || (width & 1) != 0 || (height & 1) != 0) {
+            throw new IllegalArgumentException("NV21 frames need even dimensions, got " + width + "x" + height);
+        }
+        if (nv21.length < width * height * 3 / 2) {
+            throw new IllegalArgumentException("NV21 buffer too small for " + width + "x" + height);
+        }
+        if (rotationDegrees % 90 != 0) {
+            throw new IllegalArgumentException("Rotation must be a multiple of 90, got " + rotationDegrees);
+        }
+        this.nv21 = nv21;
+        this.width = width;
+        this.height = height;
+        this.rotationDegrees = ((rotationDegrees % 360) + 360) % 360;
+    }
+    
+    // Converts the stored rectangle straight from the Y and VU planes into the
+    // raster, which presents it upright through its rotated indexing
+    public PixelRaster toRaster(int left, int top, int regionWidth, int regionHeight, PixelRaster raster) {
+        int[] pixels = raster.prepare(regionWidth, regionHeight, rotationDegrees);
+        int chroma = width * height;
+        
+        for (int y = 0; y < regionHeight; y++) {
+            int sy = top + y;
+            int lumaRow = sy * width;
+            int chromaRow = chroma + (sy >> 1) * width;
+            int out = y * regionWidth;
+            
+            for (int x = 0; x < regionWidth; x++) {
+                int sx = left + x;
+                int vu = chromaRow + (sx & ~1);
+                pixels[out + x] = toArgb(nv21[lumaRow + sx] & 0xff,
+                    (nv21[vu + 1] & 0xff) - 128, (nv21[vu] & 0xff) - 128);
+            }
+        }
+        return raster;
+    }
+    
+    // Full-range BT.601 (JFIF, as camera YUV and JPEGs use) in 10-bit fixed point
+    public static int toArgb(int luma, int u, int v) {
+        int base = (luma << 10) + 512;
+        int r = (base + 1436 * v) >> 10;
+        int g = (base - 352 * u - 731 * v) >> 10;
+        int b = (base + 1815 * u) >> 10;
+        r = r < 0 ? 0 : (r > 255 ? 255 : r);
+        g = g < 0 ? 0 : (g > 255 ? 255 : g);
+        b = b < 0 ? 0 : (b > 255 ? 255 : b);
+        return 0xff000000 | (r << 16) | (g << 8) | b;
+    }
+}
@@ -0,0 +1,58 @@
+package com.photoleloapp.facecore;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.nio.ShortBuffer;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class ArrayPixelSourceTest {
+    
+    @Test
+    public void getPixelsCopiesRectangleWithStride() {
+        int[] pixels = TestImages.random(new Random(1), 9, 7);
+        ArrayPixelSource source = new ArrayPixelSource(pixels, 9, 7);
+        
+        int[] dst = new int[2 + 6 * 4];
+        source.getPixels(dst, 2, 6, 3, 2, 5, 4);
+        
+        for (int y = 0; y < 4; y++) {
+            for (int x = 0; x < 5; x++) {
+                assertEquals(pixels[(2 + y) * 9 + 3 + x], dst[2 + y * 6 + x]);
+            }
+        }
+    }
+    
+    @Test(expected = IllegalArgumentException.class)
+    public void getPixelsRejectsRectangleOutside() {
+        new ArrayPixelSource(new int[16], 4, 4).getPixels(new int[16], 0, 4, 1, 0, 4, 4);
+    }
+    
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsShortArray() {
+        new ArrayPixelSource(new int[15], 4, 4);
+    }
+    
+    @Test
+    public void copyRgb565PacksEveryPixel() {
+        int[] pixels = TestImages.random565(new Random(2), 5, 3);
+        ShortBuffer packed = ShortBuffer.allocate(15);
+        new ArrayPixelSource(pixels, 5, 3, true).copyRgb565(packed);
+        
+        for (int i = 0; i < pixels.length; i++) {
+            assertEquals(pixels[i], Rgb565Lut.expand(packed.get(i) & 0xffff));
+        }
+    }
+    
+    @Test
+    public void rasterLoadsWithoutAndroid() {
+        int[] pixels = TestImages.random(new Random(3), 12, 8);
+        PixelRaster raster = TestImages.raster(pixels, 12, 8);
+        
+        assertEquals(12, raster.width());
+        assertEquals(8, raster.height());
+        assertArrayEquals(pixels, TestImages.upright(raster));
+    }
+}
@@ -0,0 +1,55 @@
+package com.photoleloapp.facecore;
+
+import static org.junit.Assert.assertArrayEquals;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class BlockFeatureExtractorsTest {
+    
+    // The luma-plane texture and edge blocks must match the per-pixel originals
+    // exactly, through rotation, resampling and both storages
+    @Test
+    public void textureAndEdgesMatchPerPixelReference() {
+        Random random = new Random(6);
+        PixelRaster raster = new PixelRaster();
+        
+        for (int i = 0; i < 400; i++) {
+            int width = 3 + random.nextInt(120);
+            int height = 3 + random.nextInt(120);
+            int rotation = 90 * (i % 4);
+            boolean rgb565 = i % 3 == 0;
+            int[] stored = rgb565 ? TestImages.random565(random, width, height) : TestImages.random(random, width, height);
+            raster.load(new ArrayPixelSource(stored, width, height, rgb565), rotation);
+            if (i % 5 == 0) {
+                raster.resample(3 + random.nextInt(150), 3 + random.nextInt(150));
+            }
+            int[] upright = TestImages.upright(raster);
+            String message = width + "x" + height + " at " + rotation + (rgb565 ? ", rgb565" : "");
+            
+            assertArrayEquals(message,
+                ReferenceExtractors.extractTextureFeatures(upright, raster.width(), raster.height()),
+                BlockFeatureExtractors.extractTextureFeatures(raster), 0);
+            assertArrayEquals(message,
+                ReferenceExtractors.extractEdgeFeatures(upright, raster.width(), raster.height()),
+                BlockFeatureExtractors.extractEdgeFeatures(raster), 0);
+        }
+    }
+    
+    // A flat image has no gradient and every neighbour equals the centre; a
+    // fixed case so the random one cannot pass on degenerate output
+    @Test
+    public void uniformImageHasNoEdges() {
+        int[] pixels = new int[20 * 10];
+        Arrays.fill(pixels, 0xff8a6a50);
+        PixelRaster raster = TestImages.raster(pixels, 20, 10);
+        
+        double[] edges = BlockFeatureExtractors.extractEdgeFeatures(raster);
+        double[] texture = BlockFeatureExtractors.extractTextureFeatures(raster);
+        
+        assertArrayEquals(new double[] {1, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0}, edges, 0);
+        assertArrayEquals(new double[] {0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 1}, texture, 0);
+    }
+}
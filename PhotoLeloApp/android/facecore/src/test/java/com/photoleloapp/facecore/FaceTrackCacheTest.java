@@ -0,0 +1,83 @@
+package com.photoleloapp.facecore;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class FaceTrackCacheTest {
+    
+    @Test
+    public void unknownTrackNeedsExtraction() {
+        FaceTrackCache tracks = new FaceTrackCache();
+        
+        assertFalse(tracks.reuse(1, 0, 0, 100, 100));
+    }
+    
+    @Test
+    public void stillFaceIsReusedUpToTheLimit() {
+        FaceTrackCache tracks = new FaceTrackCache();
+        tracks.update(1, 0, 0, 100, 100);
+        
+        for (int i = 0; i < FaceTrackCache.MAX_REUSE; i++) {
+            assertTrue("frame " + i, tracks.reuse(1, 0, 0, 100, 100));
+        }
+        assertFalse(tracks.reuse(1, 0, 0, 100, 100));
+        
+        // A fresh extraction starts a new run of reuse
+        tracks.update(1, 0, 0, 100, 100);
+        assertTrue(tracks.reuse(1, 0, 0, 100, 100));
+    }
+    
+    @Test
+    public void movingPastToleranceNeedsExtraction() {
+        FaceTrackCache tracks = new FaceTrackCache();
+        tracks.update(1, 100, 100, 200, 200);
+        
+        // 10% of a 100px face is 10px per edge
+        assertTrue(tracks.reuse(1, 110, 90, 210, 190));
+        assertFalse(tracks.reuse(1, 111, 100, 211, 200));
+        assertFalse(tracks.reuse(1, 100, 100, 200, 211));
+        // Resizing moves an edge just the same
+        assertFalse(tracks.reuse(1, 100, 100, 180, 180));
+    }
+    
+    @Test
+    public void tolerancesAreMeasuredFromTheLastExtraction() {
+        FaceTrackCache tracks = new FaceTrackCache();
+        tracks.update(1, 100, 100, 200, 200);
+        
+        // Drifting 8px a frame never updates the reference box
+        assertTrue(tracks.reuse(1, 108, 100, 208, 200));
+        assertFalse(tracks.reuse(1, 116, 100, 216, 200));
+    }
+    
+    @Test
+    public void tracksAreIndependent() {
+        FaceTrackCache tracks = new FaceTrackCache();
+        tracks.update(1, 0, 0, 100, 100);
+        tracks.update(2, 300, 300, 400, 400);
+        
+        assertTrue(tracks.reuse(2, 300, 300, 400, 400));
+        assertFalse(tracks.reuse(2, 0, 0, 100, 100));
+        assertTrue(tracks.reuse(1, 0, 0, 100, 100));
+    }
+    
+    @Test
+    public void evictsLeastRecentlyUsedPastMaxTracks() {
+        FaceTrackCache tracks = new FaceTrackCache();
+        for (int id = 0; id < FaceTrackCache.MAX_TRACKS; id++) {
+            tracks.update(id, 0, 0, 100, 100);
+        }
+        // Touch track 0 so track 1 is now the eldest
+        assertTrue(tracks.reuse(0, 0, 0, 100, 100));
+        
+        tracks.update(FaceTrackCache.MAX_TRACKS, 0, 0, 100, 100);
+        
+        assertFalse(tracks.reuse(1, 0, 0, 100, 100));
+        assertTrue(tracks.reuse(0, 0, 0, 100, 100));
+        for (int id = 2; id <= FaceTrackCache.MAX_TRACKS; id++) {
+            assertTrue("track " + id, tracks.reuse(id, 0, 0, 100, 100));
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package com.photoleloapp.facecore;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class FeatureCacheTest {
+    
+    // Reference LRU with the same capacity rule
+    private static final class Model extends LinkedHashMap<Long, float[]> {
+        private static final long serialVersionUID = 1L;
+        
+        int capacity;
+        
+        Model(int capacity) {
+            super(16, 0.75f, true);
+            this.capacity = capacity;
+        }
+        
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, float[]> eldest) {
+            return size() > capacity;
+        }
+    }
+    
+    @Test
+    public void behavesLikeAnLruMap() {
+        Random random = new Random(5);
+        int capacity = 12;
+        FeatureCache cache = new FeatureCache(capacity * FeatureCache.ENTRY_BYTES);
+        Model model = new Model(capacity);
+        float[] out = FeatureLayout.newVector();
+        
+        for (int op = 0; op < 200_000; op++) {
+            // Few distinct keys so hits, updates and evictions all happen; some
+            // share a table bucket so probe chains and deletions get exercised
+            long key = random.nextInt(40) * (random.nextBoolean() ? 1L : 1L << 40);
+            
+            if (op == 100_000) {
+                capacity = 5;
+                cache.resize(capacity * FeatureCache.ENTRY_BYTES);
+                model.capacity = capacity;
+                trimEldest(model);
+            }
+            
+            if (random.nextInt(3) == 0) {
+                float[] vector = vector(random);
+                cache.put(key, vector);
+                model.put(key, vector);
+            } else {
+                float[] expected = model.get(key);
+                assertEquals("op " + op, expected != null, cache.get(key, out));
+                if (expected != null) {
+                    assertArrayEquals("op " + op, expected, out, 0f);
+                }
+            }
+            assertEquals("op " + op, model.size() * FeatureCache.ENTRY_BYTES, cache.sizeBytes());
+        }
+    }
+    
+    @Test
+    public void storesCopiesOfVectors() {
+        FeatureCache cache = new FeatureCache(FeatureCache.DEFAULT_BUDGET_BYTES);
+        float[] vector = vector(new Random(6));
+        float[] stored = vector.clone();
+        cache.put(1L, vector);
+        Arrays.fill(vector, 0f);
+        
+        float[] out = FeatureLayout.newVector();
+        assertTrue(cache.get(1L, out));
+        assertArrayEquals(stored, out, 0f);
+    }
+    
+    @Test
+    public void countsHitsMissesAndEvictions() {
+        FeatureCache cache = new FeatureCache(2 * FeatureCache.ENTRY_BYTES);
+        float[] out = FeatureLayout.newVector();
+        cache.put(1L, out);
+        cache.put(2L, out);
+        assertTrue(cache.get(1L, out));
+        cache.put(3L, out); // evicts 2, the least recently used
+        assertFalse(cache.get(2L, out));
+        assertTrue(cache.get(1L, out));
+        
+        assertEquals(2, cache.hitCount());
+        assertEquals(1, cache.missCount());
+        assertEquals(1, cache.evictionCount());
+        
+        cache.resetCounters();
+        assertEquals(0, cache.hitCount() + cache.missCount() + cache.evictionCount());
+        assertEquals(2 * FeatureCache.ENTRY_BYTES, cache.sizeBytes());
+        
+        cache.clear();
+        assertEquals(0, cache.sizeBytes());
+        assertFalse(cache.get(1L, out));
+    }
+    
+    @Test
+    public void budgetBelowOneEntryStillHoldsOne() {
+        FeatureCache cache = new FeatureCache(1);
+        float[] out = FeatureLayout.newVector();
+        cache.put(7L, out);
+        assertTrue(cache.get(7L, out));
+    }
+    
+    private static void trimEldest(Model model) {
+        while (model.size() > model.capacity) {
+            model.remove(model.keySet().iterator().next());
+        }
+    }
+    
+    private static float[] vector(Random random) {
+        float[] vector = FeatureLayout.newVector();
+        for (int i = 0; i < vector.length; i++) {
+            vector[i] = random.nextFloat();
+        }
+        return vector;
+    }
+}
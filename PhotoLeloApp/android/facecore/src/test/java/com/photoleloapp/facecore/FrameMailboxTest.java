@@ -0,0 +1,106 @@
+package com.photoleloapp.facecore;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class FrameMailboxTest {
+    
+    @Test
+    public void firstOfferStartsTheConsumer() {
+        FrameMailbox<String> mailbox = new FrameMailbox<>();
+        
+        assertTrue(mailbox.offer("a"));
+        assertFalse(mailbox.offer("b"));
+        assertEquals(2, mailbox.offeredCount());
+        assertEquals(1, mailbox.droppedCount());
+    }
+    
+    @Test
+    public void consumerGetsOnlyTheLatestFrame() {
+        FrameMailbox<String> mailbox = new FrameMailbox<>();
+        mailbox.offer("a");
+        assertSame("a", mailbox.next());
+        
+        // Frames arriving while "a" is processed replace each other
+        assertFalse(mailbox.offer("b"));
+        assertFalse(mailbox.offer("c"));
+        assertFalse(mailbox.offer("d"));
+        assertSame("d", mailbox.next());
+        assertNull(mailbox.next());
+        assertEquals(2, mailbox.droppedCount());
+        
+        // Drained, so the next frame starts the consumer again
+        assertTrue(mailbox.offer("e"));
+    }
+    
+    @Test
+    public void clearDropsWaitingFrameAndIdles() {
+        FrameMailbox<String> mailbox = new FrameMailbox<>();
+        mailbox.offer("a");
+        mailbox.offer("b");
+        
+        mailbox.clear();
+        
+        assertEquals(2, mailbox.droppedCount());
+        assertNull(mailbox.next());
+        assertTrue(mailbox.offer("c"));
+    }
+    
+    // A fast producer against a slow single consumer: the consumer is never
+    // started twice, frames are seen in order, the last frame is always seen,
+    // and every frame is either consumed or counted as dropped
+    @Test
+    public void fastProducerNeverRunsTwoConsumers() throws Exception {
+        final FrameMailbox<Integer> mailbox = new FrameMailbox<>();
+        final AtomicInteger running = new AtomicInteger();
+        final List<Integer> consumed = new ArrayList<>();
+        final int frames = 20_000;
+        ExecutorService consumer = Executors.newFixedThreadPool(4);
+        final CountDownLatch overlap = new CountDownLatch(1);
+        
+        try {
+            for (int i = 0; i < frames; i++) {
+                if (mailbox.offer(i)) {
+                    consumer.execute(new Runnable() {
+                        @Override
+                        public void run() {
+                            if (running.incrementAndGet() > 1) {
+                                overlap.countDown();
+                            }
+                            for (Integer frame; (frame = mailbox.next()) != null; ) {
+                                synchronized (consumed) {
+                                    consumed.add(frame);
+                                }
+                            }
+                            running.decrementAndGet();
+                        }
+                    });
+                }
+            }
+        } finally {
+            consumer.shutdown();
+            assertTrue(consumer.awaitTermination(10, TimeUnit.SECONDS));
+        }
+        
+        assertEquals(1, overlap.getCount());
+        assertEquals(frames, mailbox.offeredCount());
+        assertEquals(frames, consumed.size() + mailbox.droppedCount());
+        assertEquals(frames - 1, (int) consumed.get(consumed.size() - 1));
+        for (int i = 1; i < consumed.size(); i++) {
+            assertTrue(consumed.get(i) > consumed.get(i - 1));
+        }
+    }
+}
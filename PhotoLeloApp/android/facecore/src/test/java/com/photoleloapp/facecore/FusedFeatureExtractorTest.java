@@ -0,0 +1,113 @@
+package com.photoleloapp.facecore;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class FusedFeatureExtractorTest {
+    
+    // Every float of the vector must match, bit for bit
+    static void assertSameVector(String message, float[] expected, float[] actual) {
+        assertEquals(message, expected.length, actual.length);
+        for (int i = 0; i < expected.length; i++) {
+            if (Float.floatToIntBits(expected[i]) != Float.floatToIntBits(actual[i])) {
+                throw new AssertionError(message + ": element " + i + " expected " + expected[i] + " but was " + actual[i]);
+            }
+        }
+    }
+    
+    @Test
+    public void matchesSeparateExtractorsBitForBit() {
+        Random random = new Random(7);
+        FusedFeatureExtractor extractor = new FusedFeatureExtractor();
+        PixelRaster raster = new PixelRaster();
+        float[] fused = FeatureLayout.newVector();
+        
+        for (int i = 0; i < 3000; i++) {
+            // Mostly small shapes, where the strides, cells and remainders interact
+            int width = 1 + random.nextInt(i % 10 == 0 ? 700 : 120);
+            int height = 1 + random.nextInt(i % 10 == 0 ? 700 : 120);
+            int[] pixels = TestImages.random(random, width, height);
+            
+            raster.load(new ArrayPixelSource(pixels, width, height), 0);
+            extractor.extract(raster, fused);
+            
+            assertSameVector(width + "x" + height, ReferenceExtractors.extract(pixels, width, height), fused);
+        }
+    }
+    
+    @Test
+    public void uniformSkinImage() {
+        int[] pixels = new int[60 * 40];
+        Arrays.fill(pixels, 0xffc08060);
+        float[] fused = FeatureLayout.newVector();
+        new FusedFeatureExtractor().extract(TestImages.raster(pixels, 60, 40), fused);
+        
+        assertSameVector("uniform", ReferenceExtractors.extract(pixels, 60, 40), fused);
+        assertEquals(0xc0 / 255f, fused[FeatureLayout.SKIN_OFFSET], 1e-6f);
+        assertEquals(0f, fused[FeatureLayout.SKIN_OFFSET + 3], 1e-6f); // no spread
+        assertEquals(1f, fused[FeatureLayout.HISTOGRAM_OFFSET + (0xc0 >> 5)], 0f);
+    }
+    
+    @Test
+    public void reusedExtractorGivesSameResultAsFreshOne() {
+        Random random = new Random(8);
+        FusedFeatureExtractor reused = new FusedFeatureExtractor();
+        float[] first = FeatureLayout.newVector();
+        float[] second = FeatureLayout.newVector();
+        
+        for (int i = 0; i < 200; i++) {
+            int width = 1 + random.nextInt(200);
+            int height = 1 + random.nextInt(200);
+            PixelRaster raster = TestImages.raster(TestImages.random(random, width, height), width, height);
+            reused.extract(raster, first);
+            new FusedFeatureExtractor().extract(raster, second);
+            assertSameVector(width + "x" + height, second, first);
+        }
+    }
+    
+    @Test
+    public void fingerprintCoversExactlyTheSampledPixels() {
+        Random random = new Random(9);
+        FusedFeatureExtractor extractor = new FusedFeatureExtractor();
+        float[] before = FeatureLayout.newVector();
+        float[] after = FeatureLayout.newVector();
+        
+        for (int i = 0; i < 500; i++) {
+            int width = 1 + random.nextInt(150);
+            int height = 1 + random.nextInt(150);
+            int[] pixels = TestImages.random(random, width, height);
+            PixelRaster raster = TestImages.raster(pixels, width, height);
+            long key = extractor.fingerprint(raster);
+            extractor.extract(raster, before);
+            
+            // Flip one pixel: the key changes exactly when the vector can
+            int x = random.nextInt(width);
+            int y = random.nextInt(height);
+            pixels[y * width + x] ^= 0x00808080;
+            raster = TestImages.raster(pixels, width, height);
+            extractor.extract(raster, after);
+            boolean sampled = ReferenceExtractors.samples(x, y, width, height);
+            
+            assertEquals(width + "x" + height + " at " + x + "," + y, sampled, extractor.fingerprint(raster) != key);
+            if (!sampled) {
+                assertSameVector("unsampled " + x + "," + y, before, after);
+            }
+        }
+    }
+    
+    @Test
+    public void fingerprintSeparatesSizesAndStrides() {
+        int[] pixels = new int[64 * 64];
+        Arrays.fill(pixels, 0xff336699);
+        long square = new FusedFeatureExtractor().fingerprint(TestImages.raster(pixels, 64, 64));
+        
+        assertNotEquals(square, new FusedFeatureExtractor().fingerprint(TestImages.raster(pixels, 32, 128)));
+        assertNotEquals(square, new FusedFeatureExtractor(2).fingerprint(TestImages.raster(pixels, 64, 64)));
+        assertEquals(square, new FusedFeatureExtractor().fingerprint(TestImages.raster(pixels.clone(), 64, 64)));
+    }
+}
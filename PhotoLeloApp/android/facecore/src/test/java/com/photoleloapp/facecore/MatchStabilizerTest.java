@@ -0,0 +1,80 @@
+package com.photoleloapp.facecore;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class MatchStabilizerTest {
+    
+    @Test
+    public void firesOnceAfterKStableFrames() {
+        MatchStabilizer stabilizer = new MatchStabilizer(3, 0.6, 0.05);
+        
+        assertFalse(stabilizer.add(0.70));
+        assertFalse(stabilizer.add(0.72));
+        assertTrue(stabilizer.add(0.71));
+        assertEquals(0.71, stabilizer.mean(), 1e-9);
+        
+        // Latched until the streak breaks
+        assertFalse(stabilizer.add(0.70));
+        assertFalse(stabilizer.add(0.71));
+    }
+    
+    @Test
+    public void missBreaksTheStreak() {
+        MatchStabilizer stabilizer = new MatchStabilizer(3, 0.6, 0.05);
+        stabilizer.add(0.70);
+        stabilizer.add(0.70);
+        
+        assertFalse(stabilizer.add(0.50));
+        assertFalse(stabilizer.add(0.70));
+        assertFalse(stabilizer.add(0.70));
+        assertTrue(stabilizer.add(0.70));
+    }
+    
+    @Test
+    public void unlatchesAfterMiss() {
+        MatchStabilizer stabilizer = new MatchStabilizer(2, 0.6, 0.05);
+        assertFalse(stabilizer.add(0.8));
+        assertTrue(stabilizer.add(0.8));
+        
+        stabilizer.add(0.1);
+        
+        assertFalse(stabilizer.add(0.8));
+        assertTrue(stabilizer.add(0.8));
+    }
+    
+    // Scores that clear the threshold but jump around are not a stable match;
+    // the window slides until the last K agree
+    @Test
+    public void waitsForScoresToSettle() {
+        MatchStabilizer stabilizer = new MatchStabilizer(3, 0.6, 0.05);
+        
+        assertFalse(stabilizer.add(0.65));
+        assertFalse(stabilizer.add(0.90));
+        assertFalse(stabilizer.add(0.70));
+        assertFalse(stabilizer.add(0.88));
+        assertFalse(stabilizer.add(0.89));
+        assertTrue(stabilizer.add(0.90));
+        assertEquals(0.89, stabilizer.mean(), 1e-9);
+    }
+    
+    @Test
+    public void resetClearsWindow() {
+        MatchStabilizer stabilizer = new MatchStabilizer(2, 0.6, 0.05);
+        stabilizer.add(0.8);
+        
+        stabilizer.reset();
+        
+        assertEquals(0, stabilizer.mean(), 0);
+        assertFalse(stabilizer.add(0.8));
+        assertTrue(stabilizer.add(0.8));
+    }
+    
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsEmptyWindow() {
+        new MatchStabilizer(0, 0.6, 0.05);
+    }
+}
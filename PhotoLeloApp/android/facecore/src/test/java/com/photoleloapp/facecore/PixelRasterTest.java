@@ -0,0 +1,142 @@
+package com.photoleloapp.facecore;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class PixelRasterTest {
+    
+    private static final int[] ROTATIONS = {0, 90, 180, 270};
+    
+    @Test
+    public void rotatedIndexingMatchesPhysicallyRotatedCopy() {
+        Random random = new Random(13);
+        PixelRaster view = new PixelRaster();
+        FusedFeatureExtractor extractor = new FusedFeatureExtractor();
+        float[] expected = FeatureLayout.newVector();
+        float[] actual = FeatureLayout.newVector();
+        
+        for (int i = 0; i < 2000; i++) {
+            int width = 1 + random.nextInt(90);
+            int height = 1 + random.nextInt(90);
+            int rotation = ROTATIONS[i % 4];
+            int[] stored = TestImages.random(random, width, height);
+            
+            view.load(new ArrayPixelSource(stored, width, height), rotation);
+            boolean transposed = rotation == 90 || rotation == 270;
+            int uprightWidth = transposed ? height : width;
+            int uprightHeight = transposed ? width : height;
+            PixelRaster copy = TestImages.raster(TestImages.rotate(stored, width, height, rotation), uprightWidth, uprightHeight);
+            String message = width + "x" + height + " at " + rotation;
+            
+            assertEquals(message, uprightWidth, view.width());
+            assertEquals(message, uprightHeight, view.height());
+            assertArrayEquals(message, TestImages.upright(copy), TestImages.upright(view));
+            assertGrayscaleEquals(message, copy, view);
+            assertEquals(message, extractor.fingerprint(copy), extractor.fingerprint(view));
+            extractor.extract(copy, expected);
+            extractor.extract(view, actual);
+            FusedFeatureExtractorTest.assertSameVector(message, expected, actual);
+        }
+    }
+    
+    @Test
+    public void rotatedCropMatchesCropOfRotatedCopy() {
+        Random random = new Random(14);
+        PixelRaster view = new PixelRaster();
+        
+        for (int i = 0; i < 500; i++) {
+            int width = 2 + random.nextInt(60);
+            int height = 2 + random.nextInt(60);
+            int left = random.nextInt(width - 1);
+            int top = random.nextInt(height - 1);
+            int cropWidth = 1 + random.nextInt(width - left);
+            int cropHeight = 1 + random.nextInt(height - top);
+            int rotation = ROTATIONS[i % 4];
+            int[] stored = TestImages.random(random, width, height);
+            
+            view.load(new ArrayPixelSource(stored, width, height), left, top, cropWidth, cropHeight, rotation);
+            int[] expected = TestImages.rotate(TestImages.crop(stored, width, left, top, cropWidth, cropHeight),
+                cropWidth, cropHeight, rotation);
+            
+            assertArrayEquals(width + "x" + height + " crop at " + rotation, expected, TestImages.upright(view));
+        }
+    }
+    
+    @Test
+    public void reloadingInvalidatesGrayscale() {
+        int[] dark = new int[16];
+        int[] light = new int[16];
+        Arrays.fill(dark, 0xff101010);
+        Arrays.fill(light, 0xfff0f0f0);
+        PixelRaster raster = TestImages.raster(dark, 4, 4);
+        assertEquals(PixelRaster.getGrayscale(0xff101010), raster.grayscale()[0]);
+        
+        raster.load(new ArrayPixelSource(light, 4, 4), 90);
+        assertEquals(PixelRaster.getGrayscale(0xfff0f0f0), raster.grayscale()[0]);
+    }
+    
+    @Test
+    public void resampledViewMatchesNearestNeighbourCopy() {
+        Random random = new Random(15);
+        PixelRaster view = new PixelRaster();
+        FusedFeatureExtractor extractor = new FusedFeatureExtractor();
+        float[] expected = FeatureLayout.newVector();
+        float[] actual = FeatureLayout.newVector();
+        
+        for (int i = 0; i < 2000; i++) {
+            int width = 1 + random.nextInt(80);
+            int height = 1 + random.nextInt(80);
+            int rotation = ROTATIONS[i % 4];
+            int[] stored = TestImages.random(random, width, height);
+            view.load(new ArrayPixelSource(stored, width, height), rotation);
+            
+            // Upright image the view starts from, then one or two resamples of it
+            int[] upright = TestImages.upright(view);
+            int uprightWidth = view.width();
+            int uprightHeight = view.height();
+            int steps = 1 + random.nextInt(2);
+            for (int step = 0; step < steps; step++) {
+                int targetWidth = 1 + random.nextInt(120);
+                int targetHeight = 1 + random.nextInt(120);
+                upright = nearestNeighbour(upright, uprightWidth, uprightHeight, targetWidth, targetHeight);
+                uprightWidth = targetWidth;
+                uprightHeight = targetHeight;
+                view.resample(targetWidth, targetHeight);
+            }
+            
+            PixelRaster copy = TestImages.raster(upright, uprightWidth, uprightHeight);
+            String message = width + "x" + height + " at " + rotation + " -> " + uprightWidth + "x" + uprightHeight;
+            assertArrayEquals(message, upright, TestImages.upright(view));
+            assertGrayscaleEquals(message, copy, view);
+            assertEquals(message, extractor.fingerprint(copy), extractor.fingerprint(view));
+            extractor.extract(copy, expected);
+            extractor.extract(view, actual);
+            FusedFeatureExtractorTest.assertSameVector(message, expected, actual);
+        }
+    }
+    
+    // Scaled copy that takes the pixel under the centre of each output pixel
+    private static int[] nearestNeighbour(int[] pixels, int width, int height, int targetWidth, int targetHeight) {
+        int[] scaled = new int[targetWidth * targetHeight];
+        for (int y = 0; y < targetHeight; y++) {
+            int sy = (int) ((y + 0.5) * height / targetHeight);
+            for (int x = 0; x < targetWidth; x++) {
+                int sx = (int) ((x + 0.5) * width / targetWidth);
+                scaled[y * targetWidth + x] = pixels[sy * width + sx];
+            }
+        }
+        return scaled;
+    }
+    
+    static void assertGrayscaleEquals(String message, PixelRaster expected, PixelRaster actual) {
+        int size = expected.width() * expected.height();
+        int[] want = Arrays.copyOf(expected.grayscale(), size);
+        int[] got = Arrays.copyOf(actual.grayscale(), size);
+        assertArrayEquals(message, want, got);
+    }
+}
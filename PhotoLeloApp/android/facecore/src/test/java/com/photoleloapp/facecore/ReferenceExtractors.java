@@ -0,0 +1,221 @@
+package com.photoleloapp.facecore;
+
+// The three extractors FusedFeatureExtractor replaced, as they were before the
+// fusion: one pass per block over a plain upright ARGB array, with double
+// accumulators. Kept only as the oracle for the fused kernel's tests. The LBP
+// texture and Sobel edge blocks are kept the same way, converting every
+// neighbour to luma per pixel as the Bitmap versions did, as the oracle for
+// BlockFeatureExtractors and its precomputed luma plane.
+final class ReferenceExtractors {
+    
+    private ReferenceExtractors() {
+    }
+    
+    // All three blocks in FeatureLayout order, narrowed to float like the pipeline stores them
+    static float[] extract(int[] pixels, int width, int height) {
+        float[] vector = FeatureLayout.newVector();
+        copy(extractOptimizedSkinTone(pixels, width, height), vector, FeatureLayout.SKIN_OFFSET, FeatureLayout.SKIN_DIM);
+        copy(extractOptimizedSpatialFeatures(pixels, width, height), vector, FeatureLayout.SPATIAL_OFFSET, FeatureLayout.SPATIAL_DIM);
+        copy(extractOptimizedHistogram(pixels, width, height), vector, FeatureLayout.HISTOGRAM_OFFSET, FeatureLayout.HISTOGRAM_DIM);
+        return vector;
+    }
+    
+    // Whether any of the three blocks reads upright pixel (x, y)
+    static boolean samples(int x, int y, int width, int height) {
+        int step = Math.max(1, Math.min(width, height) / 50);
+        if (x % step == 0 && y % step == 0) {
+            return true;
+        }
+        if (x % 4 == 0 && y % 4 == 0) {
+            return true; // histogram
+        }
+        int cellWidth = width / 3;
+        int cellHeight = height / 3;
+        return cellWidth > 0 && cellHeight > 0 && x < 3 * cellWidth && y < 3 * cellHeight
+            && (x % cellWidth) % 4 == 0 && (y % cellHeight) % 4 == 0;
+    }
+    
+    private static void copy(double[] block, float[] vector, int offset, int length) {
+        for (int i = 0; i < length; i++) {
+            vector[offset + i] = (float) block[i];
+        }
+    }
+    
+    static double[] extractOptimizedSkinTone(int[] pixels, int width, int height) {
+        double[] features = new double[16];
+        
+        // Sample pixels efficiently (every 4th pixel)
+        int step = Math.max(1, Math.min(width, height) / 50);
+        
+        double sumR = 0, sumG = 0, sumB = 0;
+        double sumR2 = 0, sumG2 = 0, sumB2 = 0;
+        int count = 0;
+        
+        for (int y = 0; y < height; y += step) {
+            int row = y * width;
+            for (int x = 0; x < width; x += step) {
+                int pixel = pixels[row + x];
+                int r = (pixel >> 16) & 0xff;
+                int g = (pixel >> 8) & 0xff;
+                int b = pixel & 0xff;
+                
+                if (isSkinTone(r, g, b)) {
+                    sumR += r; sumG += g; sumB += b;
+                    sumR2 += r * r; sumG2 += g * g; sumB2 += b * b;
+                    count++;
+                }
+            }
+        }
+        
+        if (count > 0) {
+            double meanR = sumR / count, meanG = sumG / count, meanB = sumB / count;
+            features[0] = meanR / 255.0;
+            features[1] = meanG / 255.0;
+            features[2] = meanB / 255.0;
+            features[3] = Math.sqrt(sumR2 / count - meanR * meanR) / 255.0;
+            features[4] = Math.sqrt(sumG2 / count - meanG * meanG) / 255.0;
+            features[5] = Math.sqrt(sumB2 / count - meanB * meanB) / 255.0;
+            features[6] = (double) count / ((width / step) * (height / step));
+        }
+        
+        return features;
+    }
+    
+    static double[] extractOptimizedSpatialFeatures(int[] pixels, int width, int height) {
+        double[] features = new double[27]; // 3x3 grid, RGB
+        int gridSize = 3;
+        
+        int cellWidth = width / gridSize;
+        int cellHeight = height / gridSize;
+        
+        for (int gy = 0; gy < gridSize; gy++) {
+            for (int gx = 0; gx < gridSize; gx++) {
+                double sumR = 0, sumG = 0, sumB = 0;
+                int count = 0;
+                
+                int startX = gx * cellWidth;
+                int endX = Math.min((gx + 1) * cellWidth, width);
+                int startY = gy * cellHeight;
+                int endY = Math.min((gy + 1) * cellHeight, height);
+                
+                // Sample every 4th pixel for performance
+                for (int y = startY; y < endY; y += 4) {
+                    int row = y * width;
+                    for (int x = startX; x < endX; x += 4) {
+                        int pixel = pixels[row + x];
+                        sumR += (pixel >> 16) & 0xff;
+                        sumG += (pixel >> 8) & 0xff;
+                        sumB += pixel & 0xff;
+                        count++;
+                    }
+                }
+                
+                int idx = (gy * gridSize + gx) * 3;
+                if (count > 0) {
+                    features[idx] = sumR / (count * 255.0);
+                    features[idx + 1] = sumG / (count * 255.0);
+                    features[idx + 2] = sumB / (count * 255.0);
+                }
+            }
+        }
+        
+        return features;
+    }
+    
+    static double[] extractOptimizedHistogram(int[] pixels, int width, int height) {
+        double[] features = new double[24]; // 8 bins per channel
+        int[] histR = new int[8], histG = new int[8], histB = new int[8];
+        int totalPixels = 0;
+        
+        // Sample every 4th pixel for performance
+        for (int y = 0; y < height; y += 4) {
+            int row = y * width;
+            for (int x = 0; x < width; x += 4) {
+                int pixel = pixels[row + x];
+                int r = (pixel >> 16) & 0xff;
+                int g = (pixel >> 8) & 0xff;
+                int b = pixel & 0xff;
+                
+                histR[r / 32]++;
+                histG[g / 32]++;
+                histB[b / 32]++;
+                totalPixels++;
+            }
+        }
+        
+        // Normalize
+        for (int i = 0; i < 8; i++) {
+            features[i] = (double) histR[i] / totalPixels;
+            features[i + 8] = (double) histG[i] / totalPixels;
+            features[i + 16] = (double) histB[i] / totalPixels;
+        }
+        
+        return features;
+    }
+    
+    static double[] extractTextureFeatures(int[] pixels, int width, int height) {
+        double[] features = new double[16];
+        
+        for (int y = 1; y < height - 1; y++) {
+            for (int x = 1; x < width - 1; x++) {
+                int center = luma(pixels[y * width + x]);
+                int pattern = 0;
+                
+                if (luma(pixels[(y - 1) * width + x - 1]) >= center) pattern |= 1;
+                if (luma(pixels[(y - 1) * width + x]) >= center) pattern |= 2;
+                if (luma(pixels[(y - 1) * width + x + 1]) >= center) pattern |= 4;
+                if (luma(pixels[y * width + x + 1]) >= center) pattern |= 8;
+                
+                features[pattern % 16]++;
+            }
+        }
+        
+        double total = (width - 2) * (height - 2);
+        for (int i = 0; i < features.length; i++) {
+            features[i] /= total;
+        }
+        
+        return features;
+    }
+    
+    static double[] extractEdgeFeatures(int[] pixels, int width, int height) {
+        double[] features = new double[16];
+        
+        for (int y = 1; y < height - 1; y++) {
+            for (int x = 1; x < width - 1; x++) {
+                int gx = -luma(pixels[(y - 1) * width + x - 1]) + luma(pixels[(y - 1) * width + x + 1])
+                       - 2 * luma(pixels[y * width + x - 1]) + 2 * luma(pixels[y * width + x + 1])
+                       - luma(pixels[(y + 1) * width + x - 1]) + luma(pixels[(y + 1) * width + x + 1]);
+                
+                int gy = -luma(pixels[(y - 1) * width + x - 1]) - 2 * luma(pixels[(y - 1) * width + x])
+                       - luma(pixels[(y - 1) * width + x + 1])
+                       + luma(pixels[(y + 1) * width + x - 1]) + 2 * luma(pixels[(y + 1) * width + x])
+                       + luma(pixels[(y + 1) * width + x + 1]);
+                
+                int magnitude = (int) Math.sqrt(gx * gx + gy * gy);
+                features[Math.min(15, magnitude / 16)]++;
+            }
+        }
+        
+        double total = (width - 2) * (height - 2);
+        for (int i = 0; i < features.length; i++) {
+            features[i] /= total;
+        }
+        
+        return features;
+    }
+    
+    private static int luma(int pixel) {
+        int r = (pixel >> 16) & 0xff;
+        int g = (pixel >> 8) & 0xff;
+        int b = pixel & 0xff;
+        return (int) (0.299 * r + 0.587 * g + 0.114 * b);
+    }
+    
+    private static boolean isSkinTone(int r, int g, int b) {
+        return r > 95 && g > 40 && b > 20 &&
+               r > g && r > b &&
+               Math.abs(r - g) > 15 &&
+               r - Math.min(g, b) > 15;
+    }
+}
@@ -0,0 +1,233 @@
+package com.photoleloapp.facecore;
+
+import static org.junit.Assert.assertEquals;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ShortBuffer;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class Rgb565LutTest {
+    
+    @Test
+    public void tableMatchesArithmeticForEveryColour() {
+        for (int key = 0; key < 1 << 16; key++) {
+            int argb = Rgb565Lut.expand(key);
+            int r = (argb >> 16) & 0xff;
+            int g = (argb >> 8) & 0xff;
+            int b = argb & 0xff;
+            String message = "key " + Integer.toHexString(key);
+            
+            assertEquals(message, key, Rgb565Lut.pack(argb));
+            assertEquals(message, FusedFeatureExtractor.isSkinTone(r, g, b), Rgb565Lut.isSkin(key));
+            assertEquals(message, PixelRaster.getGrayscale(argb), Rgb565Lut.luma(key));
+            int slots = Rgb565Lut.histogramSlots(key);
+            assertEquals(message, r >> 5, slots & 0x1f);
+            assertEquals(message, 8 + (g >> 5), (slots >> 5) & 0x1f);
+            assertEquals(message, 16 + (b >> 5), slots >> 10);
+        }
+    }
+    
+    @Test
+    public void expandReplicatesHighBits() {
+        assertEquals(0xff000000, Rgb565Lut.expand(0));
+        assertEquals(0xffffffff, Rgb565Lut.expand(0xffff));
+        assertEquals(0xffff0000, Rgb565Lut.expand(0xf800));
+        assertEquals(0xff00ff00, Rgb565Lut.expand(0x07e0));
+        assertEquals(0xff0000ff, Rgb565Lut.expand(0x001f));
+    }
+    
+    // The same expanded pixels held as RGB565 and as ARGB must extract identically
+    @Test
+    public void rgb565RasterMatchesArgbRaster() {
+        Random random = new Random(24);
+        PixelRaster packed = new PixelRaster();
+        PixelRaster argb = new PixelRaster();
+        float[] expected = FeatureLayout.newVector();
+        float[] actual = FeatureLayout.newVector();
+        
+        for (int i = 0; i < 400; i++) {
+            int width = 1 + random.nextInt(150);
+            int height = 1 + random.nextInt(150);
+            int rotation = 90 * (i % 4);
+            int[] pixels = TestImages.random565(random, width, height);
+            packed.load(new ArrayPixelSource(pixels, width, height, true), rotation);
+            argb.load(new ArrayPixelSource(pixels, width, height), rotation);
+            if (i % 3 == 0) {
+                int targetWidth = 1 + random.nextInt(200);
+                int targetHeight = 1 + random.nextInt(200);
+                packed.resample(targetWidth, targetHeight);
+                argb.resample(targetWidth, targetHeight);
+            }
+            FusedFeatureExtractor extractor = new FusedFeatureExtractor(1 + i % 8);
+            String message = width + "x" + height + " at " + rotation + ", step " + (1 + i % 8);
+            
+            PixelRasterTest.assertGrayscaleEquals(message, argb, packed);
+            extractor.extract(argb, expected);
+            extractor.extract(packed, actual);
+            FusedFeatureExtractorTest.assertSameVector(message, expected, actual);
+        }
+    }
+    
+    // Bitmaps may pad their rows; the raw copy keeps the padding and the
+    // offsets skip it
+    @Test
+    public void paddedStrideMatchesArgbRaster() {
+        Random random = new Random(25);
+        PixelRaster packed = new PixelRaster();
+        PixelRaster argb = new PixelRaster();
+        float[] expected = FeatureLayout.newVector();
+        float[] actual = FeatureLayout.newVector();
+        FusedFeatureExtractor extractor = new FusedFeatureExtractor();
+        
+        for (int i = 0; i < 200; i++) {
+            int width = 1 + random.nextInt(80);
+            int height = 1 + random.nextInt(80);
+            int padding = 1 + random.nextInt(8);
+            int rotation = 90 * (i % 4);
+            int[] pixels = TestImages.random565(random, width, height);
+            packed.load(new PaddedRgb565Source(pixels, width, height, padding), rotation);
+            argb.load(new ArrayPixelSource(pixels, width, height), rotation);
+            String message = width + "x" + height + " + " + padding + " at " + rotation;
+            
+            assertTrue(message, packed.rgb565);
+            assertArrayEquals(message, TestImages.upright(argb), TestImages.upright(packed));
+            PixelRasterTest.assertGrayscaleEquals(message, argb, packed);
+            extractor.extract(argb, expected);
+            extractor.extract(packed, actual);
+            FusedFeatureExtractorTest.assertSameVector(message, expected, actual);
+        }
+    }
+    
+    // A crop must not copy the whole RGB565 bitmap: it is read through
+    // getPixels, and only the rectangle
+    @Test
+    public void cropOfRgb565SourceReadsOnlyTheRectangle() {
+        Random random = new Random(26);
+        PixelRaster view = new PixelRaster();
+        
+        for (int i = 0; i < 200; i++) {
+            int width = 2 + random.nextInt(60);
+            int height = 2 + random.nextInt(60);
+            int left = random.nextInt(width - 1);
+            int top = random.nextInt(height - 1);
+            int cropWidth = 1 + random.nextInt(width - left - 1);
+            int cropHeight = 1 + random.nextInt(height - top);
+            int rotation = 90 * (i % 4);
+            int[] pixels = TestImages.random565(random, width, height);
+            PaddedRgb565Source source = new PaddedRgb565Source(pixels, width, height, 0);
+            
+            view.load(source, left, top, cropWidth, cropHeight, rotation);
+            int[] expected = TestImages.rotate(TestImages.crop(pixels, width, left, top, cropWidth, cropHeight),
+                cropWidth, cropHeight, rotation);
+            String message = width + "x" + height + " crop at " + rotation;
+            
+            assertFalse(message, view.rgb565);
+            assertFalse(message, source.copied);
+            assertArrayEquals(message, expected, TestImages.upright(view));
+        }
+    }
+    
+    // A source that only says it holds RGB565 gets the interface's packing
+    // fallback, which must give the same raster as a real raw copy
+    @Test
+    public void defaultRgb565CopyPacksGetPixels() {
+        Random random = new Random(27);
+        PixelRaster fallback = new PixelRaster();
+        PixelRaster raw = new PixelRaster();
+        
+        for (int i = 0; i < 50; i++) {
+            final int width = 1 + random.nextInt(60);
+            final int height = 1 + random.nextInt(60);
+            final ArrayPixelSource pixels = new ArrayPixelSource(TestImages.random565(random, width, height), width, height, true);
+            PixelSource source = new PixelSource() {
+                @Override
+                public int width() {
+                    return width;
+                }
+                
+                @Override
+                public int height() {
+                    return height;
+                }
+                
+                @Override
+                public boolean isRgb565() {
+                    return true;
+                }
+                
+                @Override
+                public void getPixels(int[] dst, int offset, int stride, int left, int top, int w, int h) {
+                    pixels.getPixels(dst, offset, stride, left, top, w, h);
+                }
+            };
+            
+            fallback.load(source, i % 4 * 90);
+            raw.load(pixels, i % 4 * 90);
+            
+            assertTrue(fallback.rgb565);
+            assertArrayEquals(width + "x" + height, TestImages.upright(raw), TestImages.upright(fallback));
+        }
+    }
+    
+    // RGB565 source whose stored rows carry padding past the image width
+    private static final class PaddedRgb565Source implements PixelSource {
+        
+        private final ArrayPixelSource argb;
+        private final int[] pixels;
+        private final int width;
+        private final int height;
+        private final int padding;
+        boolean copied;
+        
+        PaddedRgb565Source(int[] pixels, int width, int height, int padding) {
+            this.argb = new ArrayPixelSource(pixels, width, height, true);
+            this.pixels = pixels;
+            this.width = width;
+            this.height = height;
+            this.padding = padding;
+        }
+        
+        @Override
+        public int width() {
+            return width;
+        }
+        
+        @Override
+        public int height() {
+            return height;
+        }
+        
+        @Override
+        public boolean isRgb565() {
+            return true;
+        }
+        
+        @Override
+        public int rgb565Stride() {
+            return width + padding;
+        }
+        
+        @Override
+        public void copyRgb565(ShortBuffer dst) {
+            copied = true;
+            for (int y = 0; y < height; y++) {
+                for (int x = 0; x < width; x++) {
+                    dst.put((short) Rgb565Lut.pack(pixels[y * width + x]));
+                }
+                for (int x = 0; x < padding; x++) {
+                    dst.put((short) 0xdead);
+                }
+            }
+        }
+        
+        @Override
+        public void getPixels(int[] dst, int offset, int stride, int left, int top, int width, int height) {
+            argb.getPixels(dst, offset, stride, left, top, width, height);
+        }
+    }
+}
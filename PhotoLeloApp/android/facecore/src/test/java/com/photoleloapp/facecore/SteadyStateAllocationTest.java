@@ -0,0 +1,109 @@
+package com.photoleloapp.facecore;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+
+import org.junit.Test;
+
+// Once a worker's scratch state has grown to the largest image it has seen, a
+// comparison (load, fingerprint, cache lookup, extraction, cache store and
+// distance) must not allocate on the Java heap at all. Mirrors what
+// ScratchArena and FeatureCache do on an app worker.
+public class SteadyStateAllocationTest {
+    
+    private static final int ROUNDS = 50;
+    private static final int WINDOWS = 5;
+    
+    private final PixelRaster raster = new PixelRaster();
+    private final FusedFeatureExtractor extractor = new FusedFeatureExtractor();
+    private final FeatureCache cache = new FeatureCache(4 * FeatureCache.ENTRY_BYTES);
+    private final float[] features1 = FeatureLayout.newVector();
+    private final float[] features2 = FeatureLayout.newVector();
+    private double sink;
+    
+    @Test
+    public void warmComparisonsDoNotAllocate() {
+        com.sun.management.ThreadMXBean threads = threadBean();
+        long thread = Thread.currentThread().getId();
+        
+        Random random = new Random(11);
+        PixelSource[] sources = {
+            new ArrayPixelSource(TestImages.random(random, 320, 240), 320, 240),
+            new ArrayPixelSource(TestImages.random(random, 180, 260), 180, 260),
+            new ArrayPixelSource(TestImages.random565(random, 300, 220), 300, 220, true),
+            new ArrayPixelSource(TestImages.random565(random, 200, 310), 200, 310, true),
+            new ArrayPixelSource(TestImages.random(random, 96, 96), 96, 96),
+            new ArrayPixelSource(TestImages.random(random, 128, 64), 128, 64),
+        };
+        
+        for (int i = 0; i < 20; i++) {
+            compareAll(sources);
+        }
+        assertTrue("reference should stay cached", cache.hitCount() > 0);
+        assertTrue("candidates should evict", cache.evictionCount() > 0);
+        
+        // A window can catch one-off work of the VM itself (compilation,
+        // class loading), so the quietest of a few windows is what counts
+        long overhead = threads.getThreadAllocatedBytes(thread);
+        overhead = threads.getThreadAllocatedBytes(thread) - overhead; // cost of the probe itself
+        long allocated = Long.MAX_VALUE;
+        for (int window = 0; window < WINDOWS && allocated > 0; window++) {
+            long before = threads.getThreadAllocatedBytes(thread);
+            for (int i = 0; i < ROUNDS; i++) {
+                compareAll(sources);
+            }
+            allocated = Math.min(allocated, threads.getThreadAllocatedBytes(thread) - before - overhead);
+        }
+        
+        assertEquals("bytes allocated by " + ROUNDS + " warm rounds", 0, allocated);
+    }
+    
+    // The first source is a reference scored against every other one, so its
+    // vector keeps hitting the cache while the rest miss and evict
+    private void compareAll(PixelSource[] sources) {
+        for (int i = 1; i < sources.length; i++) {
+            int rotation = 90 * (i % 4);
+            extractFace(sources[0], 0, features1);
+            extractFace(sources[i], rotation, features2);
+            sink += FaceScores.faceConfidence(FaceScores.euclideanDistance(features1, features2));
+            extractFallback(sources[i], rotation, features2);
+            sink += FaceScores.fallbackConfidence(FaceScores.euclideanDistance(features1, features2));
+        }
+    }
+    
+    // Same steps as the module's face-region path
+    private void extractFace(PixelSource source, int rotation, float[] out) {
+        int width = source.width();
+        int height = source.height();
+        raster.load(source, width / 8, height / 8, width * 3 / 4, height * 3 / 4, rotation);
+        extract(out);
+    }
+    
+    // Same steps as the module's full-image fallback
+    private void extractFallback(PixelSource source, int rotation, float[] out) {
+        raster.load(source, rotation);
+        raster.resample(300, 300);
+        extract(out);
+    }
+    
+    private void extract(float[] out) {
+        long key = extractor.fingerprint(raster);
+        if (!cache.get(key, out)) {
+            extractor.extract(raster, out);
+            cache.put(key, out);
+        }
+    }
+    
+    private static com.sun.management.ThreadMXBean threadBean() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        assumeTrue("JVM cannot count allocations", bean instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+        assumeTrue("JVM cannot count allocations", threads.isThreadAllocatedMemorySupported());
+        threads.setThreadAllocatedMemoryEnabled(true);
+        return threads;
+    }
+}
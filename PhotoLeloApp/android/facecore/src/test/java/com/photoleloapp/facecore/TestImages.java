@@ -0,0 +1,86 @@
+package com.photoleloapp.facecore;
+
+import java.util.Random;
+
+// Synthetic images for the facecore tests. Pixels are stored row-major ARGB
+// like Bitmap.getPixels returns them.
+final class TestImages {
+    
+    private TestImages() {
+    }
+    
+    // Uniform random colours, with a share of skin tones so the skin block is exercised
+    static int[] random(Random random, int width, int height) {
+        int[] pixels = new int[width * height];
+        for (int i = 0; i < pixels.length; i++) {
+            if (random.nextInt(3) == 0) {
+                int r = 120 + random.nextInt(136);
+                int g = 50 + random.nextInt(r - 60);
+                int b = 30 + random.nextInt(Math.max(1, g - 40));
+                pixels[i] = 0xff000000 | (r << 16) | (g << 8) | b;
+            } else {
+                pixels[i] = 0xff000000 | random.nextInt(0x1000000);
+            }
+        }
+        return pixels;
+    }
+    
+    // Random image quantised to RGB565 and expanded back, as an RGB_565 bitmap reads
+    static int[] random565(Random random, int width, int height) {
+        int[] pixels = random(random, width, height);
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] = Rgb565Lut.expand(Rgb565Lut.pack(pixels[i]));
+        }
+        return pixels;
+    }
+    
+    // Physically rotated copy of a stored width x height image: the stored
+    // pixels turned clockwise by degrees, which is what the raster indexes upright
+    static int[] rotate(int[] pixels, int width, int height, int degrees) {
+        int[] rotated = new int[pixels.length];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int pixel = pixels[y * width + x];
+                switch (degrees) {
+                    case 90:
+                        rotated[x * height + (height - 1 - y)] = pixel;
+                        break;
+                    case 180:
+                        rotated[(height - 1 - y) * width + (width - 1 - x)] = pixel;
+                        break;
+                    case 270:
+                        rotated[(width - 1 - x) * height + y] = pixel;
+                        break;
+                    default:
+                        rotated[y * width + x] = pixel;
+                        break;
+                }
+            }
+        }
+        return rotated;
+    }
+    
+    // Width x height rectangle at left/top of a row-major image with the given stride
+    static int[] crop(int[] pixels, int stride, int left, int top, int width, int height) {
+        int[] cropped = new int[width * height];
+        for (int y = 0; y < height; y++) {
+            System.arraycopy(pixels, (top + y) * stride + left, cropped, y * width, width);
+        }
+        return cropped;
+    }
+    
+    // Upright pixels of a raster as a row-major copy
+    static int[] upright(PixelRaster raster) {
+        int[] pixels = new int[raster.width() * raster.height()];
+        for (int y = 0, i = 0; y < raster.height(); y++) {
+            for (int x = 0; x < raster.width(); x++, i++) {
+                pixels[i] = raster.pixel(x, y);
+            }
+        }
+        return pixels;
+    }
+    
+    static PixelRaster raster(int[] pixels, int width, int height) {
+        return new PixelRaster().load(new ArrayPixelSource(pixels, width, height), 0);
+    }
+}
@@ -0,0 +1,98 @@
+package com.photoleloapp.facecore;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class YuvFrameTest {
+    
+    @Test
+    public void convertsKnownColours() {
+        assertEquals(0xff000000, YuvFrame.toArgb(0, 0, 0));
+        assertEquals(0xffffffff, YuvFrame.toArgb(255, 0, 0));
+        assertEquals(0xff808080, YuvFrame.toArgb(128, 0, 0));
+        // Pure red, green and blue in full-range BT.601
+        assertEquals(0xfffe0000, YuvFrame.toArgb(76, -43, 127));
+        assertEquals(0xff00ff01, YuvFrame.toArgb(150, -84, -107));
+        assertEquals(0xff0000fe, YuvFrame.toArgb(29, 127, -21));
+    }
+    
+    // A synthetic frame with one chroma value per 2x2 block must convert every
+    // pixel with that block's chroma
+    @Test
+    public void regionMatchesPerPixelConversion() {
+        Random random = new Random(16);
+        PixelRaster raster = new PixelRaster();
+        
+        for (int i = 0; i < 300; i++) {
+            int width = 2 * (1 + random.nextInt(40));
+            int height = 2 * (1 + random.nextInt(40));
+            YuvFrame frame = new YuvFrame(nv21(random, width, height), width, height, 0);
+            int left = random.nextInt(width);
+            int top = random.nextInt(height);
+            int regionWidth = 1 + random.nextInt(width - left);
+            int regionHeight = 1 + random.nextInt(height - top);
+            
+            frame.toRaster(left, top, regionWidth, regionHeight, raster);
+            int[] expected = new int[regionWidth * regionHeight];
+            for (int y = 0; y < regionHeight; y++) {
+                for (int x = 0; x < regionWidth; x++) {
+                    expected[y * regionWidth + x] = argbAt(frame, left + x, top + y);
+                }
+            }
+            
+            assertArrayEquals(width + "x" + height + " region", expected, TestImages.upright(raster));
+        }
+    }
+    
+    @Test
+    public void rotatedFrameIsPresentedUpright() {
+        Random random = new Random(17);
+        PixelRaster stored = new PixelRaster();
+        PixelRaster rotated = new PixelRaster();
+        
+        for (int i = 0; i < 200; i++) {
+            int width = 2 * (1 + random.nextInt(30));
+            int height = 2 * (1 + random.nextInt(30));
+            int rotation = 90 * (i % 4);
+            byte[] nv21 = nv21(random, width, height);
+            
+            new YuvFrame(nv21, width, height, 0).toRaster(0, 0, width, height, stored);
+            new YuvFrame(nv21, width, height, rotation).toRaster(0, 0, width, height, rotated);
+            
+            assertArrayEquals(width + "x" + height + " at " + rotation,
+                TestImages.rotate(TestImages.upright(stored), width, height, rotation), TestImages.upright(rotated));
+        }
+    }
+    
+    @Test
+    public void normalisesRotation() {
+        assertEquals(270, new YuvFrame(new byte[6], 2, 2, -90).rotationDegrees);
+        assertEquals(90, new YuvFrame(new byte[6], 2, 2, 450).rotationDegrees);
+    }
+    
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsOddDimensions() {
+        new YuvFrame(new byte[15], 3, 2, 0);
+    }
+    
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsShortBuffer() {
+        new YuvFrame(new byte[5], 2, 2, 0);
+    }
+    
+    private static byte[] nv21(Random random, int width, int height) {
+        byte[] nv21 = new byte[width * height * 3 / 2];
+        random.nextBytes(nv21);
+        return nv21;
+    }
+    
+    private static int argbAt(YuvFrame frame, int x, int y) {
+        int vu = frame.width * frame.height + (y / 2) * frame.width + (x / 2) * 2;
+        return YuvFrame.toArgb(frame.nv21[y * frame.width + x] & 0xff,
+            (frame.nv21[vu + 1] & 0xff) - 128, (frame.nv21[vu] & 0xff) - 128);
+    }
+}
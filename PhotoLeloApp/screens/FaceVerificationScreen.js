@@ -10,7 +10,11 @@ import {
 } from 'react-native';
 import {Camera, useCameraDevice} from 'react-native-vision-camera';
 import {getSavedPhotoPath} from '../utils/storage';
-import {verifyFaceOffline} from '../utils/faceVerification';
+import {
+  enrollFace,
+  verifyFaceOffline,
+  warmUpFaceComparison,
+} from '../utils/faceVerification';
 
 export default function FaceVerificationScreen({navigation}) {
   const [capturedImage, setCapturedImage] = useState(null);
@@ -24,6 +28,8 @@ export default function FaceVerificationScreen({navigation}) {
   const device = useCameraDevice('front');
 
   useEffect(() => {
+    // Load the detector while the user lines up the camera
+    warmUpFaceComparison();
     loadSavedPhoto();
     checkCameraPermission();
   }, []);
@@ -127,6 +133,7 @@ export default function FaceVerificationScreen({navigation}) {
           try {
             savedPath = await downloadAndSavePhoto(savedImage, userData.username);
             console.log('Downloaded photo for verification:', savedPath);
+            await enrollFace(userData.username, savedPath);
           } catch (downloadError) {
             console.error('Failed to download photo:', downloadError);
             Alert.alert('Error', 'Could not download reference photo. Please check your internet connection.');
@@ -138,7 +145,13 @@ export default function FaceVerificationScreen({navigation}) {
         savedPath = savedImage.replace('file://', '');
       }
 
-      const result = await verifyFaceOffline(savedPath, capturedImage);
+      const {getUserData} = require('../utils/storage');
+      const currentUser = await getUserData();
+      const result = await verifyFaceOffline(
+        savedPath,
+        capturedImage,
+        currentUser ? currentUser.username : undefined,
+      );
 
       setVerificationResult(result);
 
@@ -14,6 +14,7 @@ import {
 import axios from 'axios';
 import {API_BASE_URL} from '../config';
 import {saveUserData, downloadAndSavePhoto} from '../utils/storage';
+import {enrollFace} from '../utils/faceVerification';
 
 export default function LoginScreen({navigation}) {
   const [enrollmentNumber, setEnrollmentNumber] = useState('');
@@ -86,6 +87,9 @@ export default function LoginScreen({navigation}) {
           const savedPath = await downloadAndSavePhoto(photoUrl, user.username);
           console.log('=== LOGIN: Photo saved successfully ===');
           console.log('Saved path:', savedPath);
+
+          // Process the reference photo once so verification only handles the capture
+          await enrollFace(user.username, savedPath);
           
           setLoading(false);
           navigation.replace('Home', {user});
@@ -1,5 +1,5 @@
 import RNFS from 'react-native-fs';
-import {NativeModules} from 'react-native';
+import {NativeEventEmitter, NativeModules} from 'react-native';
 
 const {FaceComparison} = NativeModules;
 
@@ -126,12 +126,177 @@ export const compareFaces = async (savedPhotoPath, capturedPhotoPath) => {
   }
 };
 
+// Process the saved reference photo once and persist its template natively,
+// so later verifications only have to process the new capture.
+export const enrollFace = async (userId, photoPath) => {
+  if (!FaceComparison || !FaceComparison.enroll) {
+    return false;
+  }
+  try {
+    const result = await FaceComparison.enroll(userId, photoPath);
+    console.log('Face enrolled for', userId, '- face found:', result.hasFace);
+    return true;
+  } catch (error) {
+    console.error('Error enrolling face:', error);
+    return false;
+  }
+};
+
+export const removeEnrolledFace = async (userId) => {
+  if (!FaceComparison || !FaceComparison.unenroll) {
+    return;
+  }
+  try {
+    await FaceComparison.unenroll(userId);
+  } catch (error) {
+    console.error('Error removing enrolled face:', error);
+  }
+};
+
+// Compare a capture against the enrolled template of userId, enrolling the
+// saved photo first if no template exists yet.
+const verifyEnrolledFace = async (userId, savedPhotoPath, capturedPhotoPath) => {
+  let result;
+  try {
+    result = await FaceComparison.verify(userId, capturedPhotoPath);
+  } catch (error) {
+    if (error.code !== 'NOT_ENROLLED') {
+      throw error;
+    }
+    console.log('No enrolled face for', userId, '- enrolling saved photo');
+    await FaceComparison.enroll(userId, savedPhotoPath);
+    result = await FaceComparison.verify(userId, capturedPhotoPath);
+  }
+
+  console.log('Native verification result:');
+  console.log('- Is match:', result.isMatch);
+  console.log('- Confidence:', result.confidence.toFixed(2) + '%');
+
+  return {
+    isMatch: result.isMatch,
+    confidence: result.confidence,
+    message: result.message,
+  };
+};
+
+// Score one saved photo against several captures in a single native call.
+// The reference is processed once; results come back in candidate order.
+export const compareFacesBatch = async (savedPhotoPath, capturedPhotoPaths) => {
+  if (!FaceComparison || !FaceComparison.compareFacesBatch) {
+    // Fallback if native module not available
+    return Promise.all(
+      capturedPhotoPaths.map(path => compareFaces(savedPhotoPath, path)),
+    );
+  }
+
+  try {
+    const results = await FaceComparison.compareFacesBatch(
+      savedPhotoPath,
+      capturedPhotoPaths,
+    );
+    return results.map(result => ({
+      isMatch: result.isMatch,
+      confidence: result.confidence,
+      message: result.message,
+    }));
+  } catch (error) {
+    console.error('Error comparing faces in batch:', error);
+    return capturedPhotoPaths.map(() => ({
+      isMatch: false,
+      confidence: 0,
+      message: 'Error during face verification: ' + error.message,
+    }));
+  }
+};
+
+// Loads the detector model in the background so the first verification is fast.
+// Safe to call repeatedly; resolves with {ready} once the detector has run once.
+export const warmUpFaceComparison = async () => {
+  if (!FaceComparison || !FaceComparison.warmUp) {
+    return {ready: false};
+  }
+  try {
+    return await FaceComparison.warmUp();
+  } catch (error) {
+    console.error('Face detector warm-up failed:', error);
+    return {ready: false};
+  }
+};
+
+// Hit/miss/eviction counters of the native feature cache
+export const getFeatureCacheStats = async () => {
+  if (!FaceComparison || !FaceComparison.getCacheStats) {
+    return null;
+  }
+  return FaceComparison.getCacheStats();
+};
+
+// Native per-stage latency since the last reset:
+// {stages: {decode: {count, meanMs, p50Ms, p90Ms, p99Ms, maxMs}, ...}, counters, cache, sinceResetMs}
+export const getNativeMetrics = async () => {
+  if (!FaceComparison || !FaceComparison.getMetrics) {
+    return null;
+  }
+  return FaceComparison.getMetrics();
+};
+
+export const resetNativeMetrics = async () => {
+  if (FaceComparison && FaceComparison.resetMetrics) {
+    await FaceComparison.resetMetrics();
+  }
+};
+
+// Turns native android.os.Trace sections per stage on or off for Perfetto captures
+export const setNativeTracing = (enabled) => {
+  if (FaceComparison && FaceComparison.setTracingEnabled) {
+    FaceComparison.setTracingEnabled(!!enabled);
+  }
+};
+
+// Continuous verification of camera frames against the enrolled face.
+// options: {stableFrames, tolerance}; onMatch fires once the score is stable.
+export const startLiveVerification = async (userId, onMatch, options = {}) => {
+  if (!FaceComparison || !FaceComparison.startLiveVerification) {
+    throw new Error('Live verification is not available');
+  }
+  const emitter = new NativeEventEmitter(FaceComparison);
+  const subscription = emitter.addListener('FaceLiveMatch', onMatch);
+  try {
+    await FaceComparison.startLiveVerification(userId, options);
+  } catch (error) {
+    subscription.remove();
+    throw error;
+  }
+
+  return {
+    // NV21 frame as base64; frames sent while one is in flight replace each other
+    submitFrame: (base64Nv21, width, height, rotation) =>
+      FaceComparison.submitFrame(base64Nv21, width, height, rotation),
+    stop: async () => {
+      subscription.remove();
+      return FaceComparison.stopLiveVerification();
+    },
+  };
+};
+
 // Validate if image contains a face (basic check)
 export const validateFaceInImage = async (imagePath) => {
   try {
-    // Check if file exists and has reasonable size
-    const fileInfo = await RNFS.stat(imagePath);
-    const fileSizeKB = fileInfo.size / 1024;
+    // content:// URIs are streamed by the native module, which rejects unreadable ones
+    if (imagePath.startsWith('content://')) {
+      return true;
+    }
+
+    // Inline base64 captures never touch the disk; size them from the payload
+    let fileSizeKB;
+    if (imagePath.startsWith('data:')) {
+      const payloadLength = imagePath.length - imagePath.indexOf(',') - 1;
+      fileSizeKB = (payloadLength * 3) / 4 / 1024;
+    } else {
+      // Check if file exists and has reasonable size
+      const fileInfo = await RNFS.stat(imagePath);
+      fileSizeKB = fileInfo.size / 1024;
+    }
 
     // Basic validation: file should be between 10KB and 10MB
     if (fileSizeKB < 10 || fileSizeKB > 10240) {
@@ -146,7 +311,7 @@ export const validateFaceInImage = async (imagePath) => {
 };
 
 // Enhanced face comparison with multiple checks
-export const verifyFaceOffline = async (savedPhotoPath, capturedPhotoUri) => {
+export const verifyFaceOffline = async (savedPhotoPath, capturedPhotoUri, userId) => {
   try {
     // Validate both images
     const savedValid = await validateFaceInImage(savedPhotoPath);
@@ -158,7 +323,8 @@ export const verifyFaceOffline = async (savedPhotoPath, capturedPhotoUri) => {
       };
     }
 
-    // For captured photo from camera, it might be a URI
+    // For captured photo from camera, it might be a URI. content:// and
+    // data: URIs are passed to the native module as they are
     let capturedPath = capturedPhotoUri;
     if (capturedPhotoUri.startsWith('file://')) {
       capturedPath = capturedPhotoUri.replace('file://', '');
@@ -173,6 +339,15 @@ export const verifyFaceOffline = async (savedPhotoPath, capturedPhotoUri) => {
       };
     }
 
+    // Use the enrolled template when we know who is verifying
+    if (userId && FaceComparison && FaceComparison.verify) {
+      try {
+        return await verifyEnrolledFace(userId, savedPhotoPath, capturedPath);
+      } catch (error) {
+        console.error('Enrolled verification failed, comparing photos:', error);
+      }
+    }
+
     // Compare faces
     return await compareFaces(savedPhotoPath, capturedPath);
   } catch (error) {
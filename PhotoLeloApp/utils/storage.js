@@ -1,6 +1,7 @@
 import AsyncStorage from '@react-native-async-storage/async-storage';
 import RNFS from 'react-native-fs';
 import CryptoJS from 'crypto-js';
+import {removeEnrolledFace} from './faceVerification';
 
 const STORAGE_KEYS = {
   USER_DATA: 'user_data',
@@ -156,6 +157,10 @@ export const clearStorage = async () => {
     if (photoPath && (await RNFS.exists(photoPath))) {
       await RNFS.unlink(photoPath);
     }
+    const userData = await getUserData();
+    if (userData && userData.username) {
+      await removeEnrolledFace(userData.username);
+    }
     await AsyncStorage.multiRemove([
       STORAGE_KEYS.USER_DATA,
       STORAGE_KEYS.PHOTO_HASH,